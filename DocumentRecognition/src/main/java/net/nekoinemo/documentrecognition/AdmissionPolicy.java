@@ -0,0 +1,20 @@
+package net.nekoinemo.documentrecognition;
+
+/**
+ * Defines what happens when target is pushed into the full recognition queue.
+ */
+public enum AdmissionPolicy {
+
+	/**
+	 * Wait until the queue has space for the target.
+	 */
+	BLOCK,
+	/**
+	 * Throw RecognitionQueueFullException right away.
+	 */
+	REJECT,
+	/**
+	 * Wait for the space up to the admission timeout, then throw RecognitionQueueFullException.
+	 */
+	TIMED_OFFER
+}
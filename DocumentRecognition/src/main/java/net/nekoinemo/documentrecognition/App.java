@@ -67,7 +67,8 @@ public class App {
 		};
 
 		// RecognitionManager instance stored in the interface reference to hide the auxiliary methods not related to the user API
-		IRecognitionManager recognitionManager = RecognitionManager.INSTANCE;
+		// Every instance has its own settings, engines and temporary folders, so differently tuned managers can work side by side
+		IRecognitionManager recognitionManager = new RecognitionManager();
 		try {
 			// Initialization of the RecognitionManager. Need to be done once in the initialization of the system
 			recognitionManager.setEventListener(recognitionManagerEventListener); // Setting the event listener for the RecognitionManager class. Can be skipped
@@ -79,11 +80,9 @@ public class App {
 			recognitionManager.init(); // Initializes RecognitionManager (will check if everything is ready and works correctly)
 			recognitionManager.start(); // Puts recognitionManager in a standby mode, awaiting for the files to process
 
-			recognitionManager.pushAllFiles(new File(args[1]), recognitionResultEventListener); // All *supported* files in folder. Supported file extensions are defined in the RecognitionManager class
-
-			// Wait till all pushed files are processed
-			int queueSize = recognitionManager.getQueueSize();
-			while (results.size() < queueSize) Thread.sleep(1000);
+			// All *supported* files in folder. Supported file extensions are defined in the RecognitionManager class
+			// Returned batch handle completes when all pushed files are processed
+			recognitionManager.pushAllFiles(new File(args[1]), recognitionResultEventListener).join();
 
 			recognitionManager.stop(); // Stops the recognitionManager, aborting any queued tasks. Should be done on the system shutdown
 
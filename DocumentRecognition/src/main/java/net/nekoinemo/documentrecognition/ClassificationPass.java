@@ -0,0 +1,93 @@
+package net.nekoinemo.documentrecognition;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Full page OCR result that determined the type of the target. Builders use its full resolution version (see RecognitionTarget.getFullResolutionPass())
+ * as their first pass instead of recognizing the same page again.
+ * Coordinates in the hOCR are the coordinates on the page preview, after the page was rotated to the found orientation. Divide them by the scale to get the coordinates on the page.
+ * Pages having the text layer are classified by it instead, such pass matches any settings.
+ */
+public class ClassificationPass {
+
+	private final int pageIndex;
+	private final int rotationAngle;
+	private final float scale;
+	private final RecognitionSettings recognitionSettings;
+	private final Document hOCR;
+
+	/**
+	 * @param pageIndex
+	 * @param rotationAngle
+	 * @param scale
+	 * @param recognitionSettings Settings of the recognition or null if the text layer was used.
+	 * @param hOCR
+	 */
+	ClassificationPass(int pageIndex, int rotationAngle, float scale, RecognitionSettings recognitionSettings, Document hOCR) {
+
+		this.pageIndex = pageIndex;
+		this.rotationAngle = rotationAngle;
+		this.scale = scale;
+		this.recognitionSettings = recognitionSettings;
+		this.hOCR = hOCR;
+	}
+
+	/**
+	 * Returns the index of the page in RecognitionTarget.getPages().
+	 *
+	 * @return
+	 */
+	public int getPageIndex() {
+
+		return pageIndex;
+	}
+	/**
+	 * Returns the angle the page was rotated by before the recognition. All pages of the target are rotated by it afterwards.
+	 *
+	 * @return
+	 */
+	public int getRotationAngle() {
+
+		return rotationAngle;
+	}
+	/**
+	 * Returns the scale of the recognized image relative to the page.
+	 *
+	 * @return 1 if the page was recognized at the full resolution.
+	 */
+	public float getScale() {
+
+		return scale;
+	}
+	/**
+	 * Returns the recognition result. Should be treated as read-only, it's shared by the builders.
+	 *
+	 * @return
+	 */
+	public Document getHOCR() {
+
+		return hOCR;
+	}
+	/**
+	 * Returns whenever the text was taken from the text layer of the page rather than recognized.
+	 *
+	 * @return
+	 */
+	public boolean isTextLayer() {
+
+		return recognitionSettings == null;
+	}
+	/**
+	 * Returns whenever the pass was done with the same engine and page segmentation modes as the settings.
+	 *
+	 * @param recognitionSettings
+	 *
+	 * @return Always true for the text layer.
+	 */
+	public boolean matches(RecognitionSettings recognitionSettings) {
+
+		if (isTextLayer()) return true;
+
+		return this.recognitionSettings.getEngineMode() == recognitionSettings.getEngineMode() && this.recognitionSettings.getPageSegMode() == recognitionSettings.getPageSegMode();
+	}
+}
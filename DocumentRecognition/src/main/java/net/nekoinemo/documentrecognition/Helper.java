@@ -1,18 +1,12 @@
 package net.nekoinemo.documentrecognition;
 
-import net.nekoinemo.documentrecognition.processing.ImageHelper;
-import net.sourceforge.vietocr.PdfUtilities;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 public class Helper {
 
@@ -33,35 +27,39 @@ public class Helper {
 
 		return new Rectangle(rectangle.x < availableArea.x ? availableArea.x : rectangle.x, rectangle.y < availableArea.y ? availableArea.y : rectangle.y, rectangle.x + rectangle.width > availableArea.x + availableArea.width ? availableArea.x + availableArea.width - rectangle.x : rectangle.width, rectangle.y + rectangle.height > availableArea.y + availableArea.height ? availableArea.y + availableArea.height - rectangle.y : rectangle.height);
 	}
-	public static ArrayList<File> imagesFromFile(File file) throws IOException {
+	public static boolean isPdf(File file) {
 
-		ArrayList<File> result = new ArrayList<>();
-
-		if (!file.isFile()) return result;
-
-		if (FilenameUtils.isExtension(file.getName().toLowerCase(), "pdf")) {
-			File[] extractedFiles = PdfUtilities.convertPdf2Png(file);
-			for (int i = 0; i < extractedFiles.length; i++) {
-				File fileSrc = extractedFiles[i];
-				File fileDst = new File(RecognitionManager.getInstance().getWorkingImagesDirectory(), new StringBuilder(FilenameUtils.removeExtension(file.getName())).append('_').append(i).append(".png").toString());
-				FileUtils.moveFile(fileSrc, fileDst);
-				result.add(fileDst);
-			}
-		} else {
-			File fileDst = new File(RecognitionManager.getInstance().getWorkingImagesDirectory(), file.getName());
-			FileUtils.copyFile(file, fileDst);
-			result.add(fileDst);
-		}
-
-		return result;
+		return FilenameUtils.isExtension(file.getName().toLowerCase(), "pdf");
 	}
-	public static void rotateImageFile(File file, int angle) throws IOException {
-
-		if (angle % 360 == 0) return;
+	/**
+	 * @param data
+	 * @param mimeType MIME type of the data. If null - PDF data is recognized by its header.
+	 *
+	 * @return
+	 */
+	public static boolean isPdf(ByteBuffer data, String mimeType) {
+
+		return mimeType != null ? mimeType.equalsIgnoreCase("application/pdf") : isPdf(data);
+	}
+	/**
+	 * Returns the content between the position and the limit of the buffer. Backing array is returned as is when it holds exactly that content.
+	 *
+	 * @param data
+	 *
+	 * @return
+	 */
+	public static byte[] toByteArray(ByteBuffer data) {
+
+		if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 && data.remaining() == data.array().length) return data.array();
+
+		byte[] copy = new byte[data.remaining()];
+		data.duplicate().get(copy);
+		return copy;
+	}
+	public static boolean isPdf(ByteBuffer data) {
 
-		BufferedImage image = ImageIO.read(file);
-		image = ImageHelper.rotate(image, angle);
-		ImageIO.write(image, FilenameUtils.getExtension(file.getName()), file);
+		int start = data.position();
+		return data.remaining() >= 4 && data.get(start) == '%' && data.get(start + 1) == 'P' && data.get(start + 2) == 'D' && data.get(start + 3) == 'F';
 	}
 	public static void graphics2DDrawRectangle(Graphics2D graphics2D, Rectangle rectangle) {
 
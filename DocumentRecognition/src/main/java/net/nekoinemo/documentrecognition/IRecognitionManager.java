@@ -1,41 +1,279 @@
 package net.nekoinemo.documentrecognition;
 
 import net.nekoinemo.documentrecognition.event.RecognitionManagerEventListener;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEvent;
 import net.nekoinemo.documentrecognition.event.RecognitionResultEventListener;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Main recognition process class. Operates as a singleton on its own thread.
+ * Main recognition process class. Instances are independent, each one has its own queue, threads, engines and working directory and operates on its own threads.
  * Responsible for the managing the recognition process through keeping a queue of recognition targets and notifying the corresponding event listeners about target being processed.
+ * Targets are processed by the pipeline of stages (see RecognitionStage) connected by the bounded queues, each stage has its own threads.
  */
-public interface IRecognitionManager extends Runnable {
+public interface IRecognitionManager {
 
 	/**
 	 * Puts all supported files in the recognition queue.
 	 *
 	 * @param directory     Directory containing the files to be processed. Only files of the supported types will be added to the queue.
 	 * @param eventListener Event listener that should process the recognition result.
-	 *                      This event listener will be set for every found file. Files can e differentiated based on their ID (matches the file name).
+	 *                      This event listener will be set for every found file. Files can e differentiated based on their ID (matches the file name). Can be null.
+	 *
+	 * @return Batch handle which completes when every found file is processed. Contains results of all files, failed or cancelled ones have the cause set.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further). Files pushed before it are still processed,
+	 *                                                                          their results are delivered to the event listener only.
+	 */
+	CompletableFuture<List<RecognitionResultEvent>> pushAllFiles(File directory, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts all supported files in the recognition queue with the specified options (e.g. priority).
+	 *
+	 * @param directory     Directory containing the files to be processed. Only files of the supported types will be added to the queue.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options       Options applied to every found file.
+	 *
+	 * @return Batch handle which completes when every found file is processed. Contains results of all files, failed or cancelled ones have the cause set.
 	 *
 	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further). Files pushed before it are still processed,
+	 *                                                                          their results are delivered to the event listener only.
 	 */
-	void pushAllFiles(File directory, RecognitionResultEventListener eventListener) throws InterruptedException;
+	CompletableFuture<List<RecognitionResultEvent>> pushAllFiles(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts all supported files in the recognition queue in the background, each file is pushed only when the queue has space for it.
+	 * Unlike pushAllFiles() it doesn't build the list of targets up front, so memory usage doesn't depend on the directory size. Admission policy is ignored, feeding always waits for the space.
+	 *
+	 * @param directory     Directory containing the files to be processed. Only files of the supported types will be added to the queue.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options       Options applied to every found file.
+	 *
+	 * @return Batch handle which completes with the number of pushed files when every one of them is processed.
+	 */
+	CompletableFuture<Integer> pushAllFilesLazily(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options);
+	/**
+	 * Starts taking the files from the directory shared by several nodes. Each file is processed by a single node, claimed files are locked with the lease files
+	 * and the result is written to the "<name>.result.txt" file next to the input. See SpoolDirectory for the details.
+	 * Spool is closed by stop() or by closing the returned object.
+	 *
+	 * @param directory     Shared directory. Only files of the supported types are taken.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options       Options applied to every taken file.
+	 *
+	 * @return
+	 */
+	SpoolDirectory openSpool(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options);
 	/**
 	 * Puts a file in the recognition queue. File type is not checked (can cause and exception if unsupported file is provided).
 	 *
 	 * @param file          File to be recognized.
-	 * @param eventListener Event listener that should process the recognition result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushFile(File file, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts a file in the recognition queue with the specified options (e.g. priority).
+	 *
+	 * @param file          File to be recognized.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushFile(File file, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts a file in the recognition queue.
+	 *
+	 * @param file File to be recognized.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> submit(File file) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts a file in the recognition queue with the specified options (e.g. priority).
+	 *
+	 * @param file    File to be recognized.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> submit(File file, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Reads the stream and puts its content in the recognition queue. Stream isn't closed.
+	 *
+	 * @param stream Content of the image or PDF file.
+	 * @param id     ID of the target which will be returned in the result.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
 	 *
+	 * @throws IOException if stream can't be read.
 	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
 	 */
-	void pushFile(File file, RecognitionResultEventListener eventListener) throws InterruptedException;
+	CompletableFuture<RecognitionResultEvent> submit(InputStream stream, String id) throws IOException, InterruptedException, RecognitionManagerException;
+	/**
+	 * Reads the stream and puts its content in the recognition queue with the specified options (e.g. priority). Stream isn't closed.
+	 *
+	 * @param stream  Content of the image or PDF file.
+	 * @param id      ID of the target which will be returned in the result.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws IOException if stream can't be read.
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> submit(InputStream stream, String id, RecognitionOptions options) throws IOException, InterruptedException, RecognitionManagerException;
+	/**
+	 * Reads the stream and puts its content in the recognition queue. Content is decoded in memory, see pushBytes(). Stream isn't closed.
+	 *
+	 * @param stream        Content of the image or PDF file.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws IOException if stream can't be read.
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushStream(InputStream stream, String id, RecognitionResultEventListener eventListener) throws IOException, InterruptedException, RecognitionManagerException;
+	/**
+	 * Reads the stream and puts its content in the recognition queue with the specified options. Content is decoded in memory, see pushBytes(). Stream isn't closed.
+	 *
+	 * @param stream        Content of the image or PDF file.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws IOException if stream can't be read.
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushStream(InputStream stream, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws IOException, InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts the content in the recognition queue. Images are decoded straight from the memory, only PDF content is written to the working directory for the conversion.
+	 * Array is used as is, so it shouldn't be modified until the recognition is finished.
+	 *
+	 * @param data          Content of the image or PDF file.
+	 * @param mimeType      MIME type of the content (e.g. "image/png", "application/pdf"). If null - type is detected from the content.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushBytes(byte[] data, String mimeType, String id, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts the content in the recognition queue with the specified options. See pushBytes(byte[], String, String, RecognitionResultEventListener).
+	 *
+	 * @param data          Content of the image or PDF file.
+	 * @param mimeType      MIME type of the content. If null - type is detected from the content.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushBytes(byte[] data, String mimeType, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts the content between the position and the limit of the buffer in the recognition queue. Buffer's position and limit aren't changed.
+	 * Heap buffers are decoded without copying, so content shouldn't be modified until the recognition is finished.
+	 *
+	 * @param data          Content of the image or PDF file.
+	 * @param mimeType      MIME type of the content. If null - type is detected from the content.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushBytes(ByteBuffer data, String mimeType, String id, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Puts the content of the buffer in the recognition queue with the specified options. See pushBytes(ByteBuffer, String, String, RecognitionResultEventListener).
+	 *
+	 * @param data          Content of the image or PDF file.
+	 * @param mimeType      MIME type of the content. If null - type is detected from the content.
+	 * @param id            ID of the target which will be returned in the result.
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options
+	 *
+	 * @return Future of the recognition result. Completes exceptionally if recognition failed, cancelling it cancels the recognition.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionQueueFullException if queue is full and admission policy doesn't allow to wait (further).
+	 */
+	CompletableFuture<RecognitionResultEvent> pushBytes(ByteBuffer data, String mimeType, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
 	/**
 	 * Get the size of the current recognition queue.
 	 *
 	 * @return
 	 */
 	int getQueueSize();
+	/**
+	 * Get the statistics of the time targets of the priority class spent waiting in the queues, end to end: summed over the queues of all stages.
+	 * Recorded once the target is finished.
+	 *
+	 * @param priority
+	 *
+	 * @return
+	 */
+	RecognitionScheduler.QueueWaitStatistics getQueueWaitStatistics(RecognitionPriority priority);
+	/**
+	 * Sets the time after which the waiting batch target is served before the interactive ones, in the queue of every stage. Default is 60 seconds.
+	 *
+	 * @param batchWaitLimit Time in milliseconds.
+	 */
+	void setBatchWaitLimit(long batchWaitLimit);
+	/**
+	 * Sets the maximum number of targets in the recognition queue. Queue is unbounded by default.
+	 *
+	 * @param capacity
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if value isn't positive.
+	 */
+	void setQueueCapacity(int capacity) throws RecognitionManagerException;
+	/**
+	 * Sets what happens when target is pushed into the full recognition queue. Default is AdmissionPolicy.BLOCK.
+	 *
+	 * @param admissionPolicy
+	 */
+	void setAdmissionPolicy(AdmissionPolicy admissionPolicy);
+	/**
+	 * Sets how long push waits for the space in the queue with AdmissionPolicy.TIMED_OFFER. Default is 1 second.
+	 *
+	 * @param admissionTimeout Time in milliseconds.
+	 */
+	void setAdmissionTimeout(long admissionTimeout);
 	/**
 	 * Initialize the RecognitionManager. Should be done before executing the start().
 	 * Performs test recognition.
@@ -68,31 +306,176 @@ public interface IRecognitionManager extends Runnable {
 	 */
 	void removeEventListener();
 	/**
-	 * Sets whenever debug output should be created. Output is stored in the "debug" folder inside the temporary directory.
+	 * Sets whenever debug output should be created. Output is stored in the "debug/<name>" folder inside the temporary directory.
+	 * Can be changed while running, targets that are already being processed may still write partial output.
 	 *
 	 * @param debugOutput
 	 */
 	void setDebugOutput(boolean debugOutput) throws RecognitionManagerException;
 	/**
-	 * Specifies recognition setting that should be used.
+	 * Specifies recognition setting that should be used. Can be changed while running:
+	 * targets pushed after the call use the new settings, targets that were already pushed are finished with the old ones.
 	 *
-	 * @param recognitionSettings Array of the ordered RecognitionSettings.
-	 *
-	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running.
+	 * @param recognitionSettings Array of the ordered RecognitionSettings. If null or empty - default settings are used.
 	 */
 	void setRecognitionSettings(RecognitionSettings[] recognitionSettings) throws RecognitionManagerException;
 	/**
-	 * Sets the location of the temporary folder.
+	 * Sets the default number of threads of each stage. Each thread processes one target at a time with its own Tesseract engine.
+	 * Defaults to the number of available processors.
+	 *
+	 * @param threadCount
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running or value isn't positive.
+	 */
+	void setThreadCount(int threadCount) throws RecognitionManagerException;
+	/**
+	 * Sets the number of threads of the specific stage. Overrides the value set by setThreadCount().
+	 *
+	 * @param stage
+	 * @param threadCount
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running or value isn't positive.
+	 */
+	void setStageThreadCount(RecognitionStage stage, int threadCount) throws RecognitionManagerException;
+	/**
+	 * Sets the resolution PDF pages are rendered at. Applies to the targets which processing hasn't started yet. Default is 300.
+	 *
+	 * @param dpi
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if value isn't positive.
+	 */
+	void setRasterizationDpi(int dpi) throws RecognitionManagerException;
+	/**
+	 * Sets the scale of the reduced page rendition used to determine orientation and type of the document. Fields are still extracted from the full resolution page.
+	 * PDF pages are rendered at the proportionally lower DPI, images are decoded with the subsampling (every n-th pixel, n = 1 / scale rounded down). Default is 0.5.
+	 *
+	 * @param scale Scale in (0, 1], 1 disables the reduced rendition.
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if value is out of range.
+	 */
+	void setClassificationScale(float scale) throws RecognitionManagerException;
+	/**
+	 * Sets the minimum confidence of the orientation estimated from the text lines layout. Page with the confident estimate is recognized only in the estimated orientation,
+	 * otherwise it's recognized in every orientation until the document type is determined. Default is 0.25.
+	 *
+	 * @param confidence Confidence in [0, 1], values above 1 disable the estimation.
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if value is negative.
+	 */
+	void setOrientationConfidence(float confidence) throws RecognitionManagerException;
+	/**
+	 * Enables determining the document type from the page layout (ruled tables of MOM documents, cards of work permits) before the OCR. See LayoutClassifier.
+	 * Only the pages which layout is ambiguous or which orientation can't be estimated are recognized to determine the type. Requires OpenCV libraries, they are loaded when enabled. Default is false.
+	 *
+	 * @param enabled
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if OpenCV libraries can't be loaded.
+	 */
+	void setLayoutClassification(boolean enabled) throws RecognitionManagerException;
+	/**
+	 * Sets the number of threads rendering PDF pages ahead of their use. Pages are rendered on demand, so the first page is classified before the rest is rendered.
+	 * Once document type is determined the remaining pages are split between the workers and rendered in parallel. Default is 1, 0 disables the prefetching.
+	 *
+	 * @param workers
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running or value is negative.
+	 */
+	void setRasterizationWorkers(int workers) throws RecognitionManagerException;
+	/**
+	 * Sets how much memory the decoded pages of all targets may use. Pages over the budget are written to the working directory (least recently used first)
+	 * and read back when needed. Default is a quarter of the maximum heap size.
+	 *
+	 * @param pageMemoryBudget Size in bytes.
+	 */
+	void setPageMemoryBudget(long pageMemoryBudget);
+	/**
+	 * Sets the default maximum processing time of a target. Can be overridden per target with RecognitionOptions.
+	 * When the time runs out processing stops at the next safe point and result contains the data found so far, see RecognitionResultEvent.isBudgetExceeded().
+	 *
+	 * @param timeBudget Time in milliseconds. 0 - unlimited (default).
+	 */
+	void setTimeBudget(long timeBudget);
+	/**
+	 * Sets the cache of the recognition results. Targets which content was already recognized with the same settings are finished from the cache without OCR.
+	 * Can be shared by several RecognitionManagers.
+	 *
+	 * @param resultCache Cache or null to disable caching (default).
+	 */
+	void setResultCache(ResultCache resultCache);
+	ResultCache getResultCache();
+	/**
+	 * Sets the journal recording the file targets. Targets pushed as the data aren't journaled, their content isn't kept after the processing.
+	 * Targets aborted by stop() or a crash stay unfinished in the journal and can be pushed again with resume().
+	 *
+	 * @param journal Journal or null to disable journaling (default).
+	 */
+	void setJournal(RecognitionJournal journal);
+	RecognitionJournal getJournal();
+	/**
+	 * Pushes the files the journal has as unfinished. Files which no longer exist are skipped.
+	 *
+	 * @param eventListener Event listener that should process the recognition result. Can be null.
+	 * @param options       Options applied to every file.
+	 *
+	 * @return Batch handle which completes when every file is processed. Contains results of all files, failed or cancelled ones have the cause set.
+	 *
+	 * @throws InterruptedException
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if journal isn't set or queue is full and admission policy doesn't allow to wait (further). Files pushed before the full
+	 *                                                                       queue are still processed, their results are delivered to the event listener only.
+	 */
+	CompletableFuture<List<RecognitionResultEvent>> resume(RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException;
+	/**
+	 * Fires the results of the files completed according to the journal, including the ones completed by the previous runs.
+	 *
+	 * @param eventListener
+	 *
+	 * @return Number of the fired events.
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if journal isn't set.
+	 */
+	int replayJournal(RecognitionResultEventListener eventListener) throws RecognitionManagerException;
+	/**
+	 * Sets how many first entries of the RecognitionSettings cascade are recognized concurrently, each one on its own engine.
+	 * Result of the earliest entry that reaches its passing completeness is used and the rest are cancelled.
+	 * Speeds up the documents which need the later entries at the cost of the extra CPU time. Default is 1 (sequential cascade).
+	 *
+	 * @param width
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running or value isn't positive.
+	 */
+	void setSpeculativeCascadeWidth(int width) throws RecognitionManagerException;
+	/**
+	 * Sets the capacity of the queues between the stages. Stage waits for the space in the queue of the next stage before taking a new target.
+	 *
+	 * @param capacity
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running or value isn't positive.
+	 */
+	void setStageQueueCapacity(int capacity) throws RecognitionManagerException;
+	/**
+	 * Get the number of targets waiting for the stage. For the first stage it's the size of the recognition queue.
+	 *
+	 * @param stage
+	 *
+	 * @return
+	 */
+	int getStageQueueSize(RecognitionStage stage);
+	/**
+	 * Sets the location of the temporary folder. RecognitionManager has to be initialized with init() again after the change.
 	 *
 	 * @param temporaryDirectoriesLocation Location where the folder(s) for the temporary files will be created.
+	 *
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running.
 	 */
 	void setTemporaryDirectoriesLocation(File temporaryDirectoriesLocation) throws RecognitionManagerException;
 	/**
 	 * Specifies the path to the tessdata directory. Directory should contain language and training data for the used languages.
+	 * If RecognitionManager isn't running it has to be initialized with init() again. Otherwise the new path is tested right away
+	 * and worker threads switch to it before recognizing their next target.
 	 *
 	 * @param value Path to the tessdata directory.
 	 *
-	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is currently running.
+	 * @throws net.nekoinemo.documentrecognition.RecognitionManagerException if RecognitionManager is running and test recognition with the new path failed.
 	 */
 	void setTessDataPath(String value) throws RecognitionManagerException;
 	/**
@@ -103,10 +486,19 @@ public interface IRecognitionManager extends Runnable {
 	 */
 	void start() throws RecognitionManagerException;
 	/**
-	 * Stops RecognitionManager, aborting any pending task in the queue. Queue is cleared uppon stopping.
-	 * Doing so will deinitialize the RecognitionManager
+	 * Stops RecognitionManager, aborting any pending task in the queue and between the stages. Queues are cleared uppon stopping.
+	 * RecognitionManager stays initialized and can be started again.
 	 *
 	 * @throws InterruptedException
 	 */
 	void stop() throws InterruptedException;
+	/**
+	 * Stops RecognitionManager.
+	 *
+	 * @param drain If true - waits until lazy batches are fed and every pushed target is processed before stopping. Targets pushed meanwhile are processed too.
+	 *              If false - same as stop().
+	 *
+	 * @throws InterruptedException
+	 */
+	void stop(boolean drain) throws InterruptedException;
 }
@@ -0,0 +1,258 @@
+package net.nekoinemo.documentrecognition;
+
+import net.nekoinemo.documentrecognition.processing.PageRasterizer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.function.UnaryOperator;
+
+/**
+ * Decoded page of the target. Raster is kept in memory between the stages and written to the working directory of the target only
+ * when the pages of all targets exceed the memory budget of the RecognitionManager. Spilled raster is read back on the next access.
+ * Pages are rendered on the first access, transformations requested before that are applied right after rendering.
+ * Reduced preview of the page is rendered separately for the orientation and classification, so the full raster is decoded only when extraction needs it.
+ */
+public class PageImage {
+
+	private final PageStore store;
+	private final String name;
+	private final File spillFile;
+	private final PageRasterizer rasterizer;
+	private final int pageIndex;
+	private final float previewScale;
+	private final ArrayList<UnaryOperator<BufferedImage>> transforms = new ArrayList<>(); // All transformations requested so far, applied to every fresh rendition
+	private BufferedImage image = null;
+	private BufferedImage preview = null; // Isn't accounted in the store, it's a fraction of the full raster
+	private boolean replaced = false;
+	private Document textLayer = null;
+	private boolean textLayerRead = false;
+	private long size = 0;
+	private boolean spilled = false;
+	private boolean released = false;
+
+	PageImage(PageStore store, String name, File spillFile, PageRasterizer rasterizer, int pageIndex, float previewScale) {
+
+		this.store = store;
+		this.name = name;
+		this.spillFile = spillFile;
+		this.rasterizer = rasterizer;
+		this.pageIndex = pageIndex;
+		this.previewScale = previewScale;
+	}
+
+	/**
+	 * Returns the name of the page, e.g. "scan.png" for the image files or "document_0.png" for the PDF pages.
+	 *
+	 * @return
+	 */
+	public String getName() {
+
+		return name;
+	}
+	/**
+	 * Returns the raster of the page. Should be treated as read-only, use setImage() or transform() to replace it.
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException if page can't be rendered or raster was spilled and can't be read back.
+	 */
+	public BufferedImage getImage() throws RecognitionManagerException {
+
+		BufferedImage result;
+		boolean loaded = false;
+		synchronized (this) {
+			if (image == null) {
+				if (released) throw new RecognitionManagerException("Page " + name + " was released");
+
+				try {
+					if (spilled) image = ImageIO.read(spillFile);
+					else {
+						image = rasterizer.renderPage(pageIndex);
+						for (UnaryOperator<BufferedImage> transform : transforms) image = transform.apply(image);
+					}
+				} catch (IOException e) {
+					throw new RecognitionManagerException((spilled ? "Can't read spilled page " : "Can't render page ") + name, e);
+				}
+				size = sizeOf(image);
+				loaded = true;
+			}
+			result = image;
+		}
+
+		// Store is notified outside of the page lock, it may spill other pages
+		if (loaded) store.loaded(this);
+		else store.touched(this);
+
+		return result;
+	}
+	/**
+	 * Replaces the raster. Preview can't be rendered from the source afterwards, so getPreview() returns the full raster from then on.
+	 *
+	 * @param image
+	 */
+	public void setImage(BufferedImage image) {
+
+		synchronized (this) {
+			replaced = true;
+			preview = null;
+		}
+
+		replaceImage(image);
+	}
+	/**
+	 * Returns the reduced rendition of the page, with all the transformations applied. Should be treated as read-only.
+	 * Coordinates on it are the coordinates on the full raster multiplied by getPreviewScale().
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException if preview can't be rendered.
+	 */
+	public BufferedImage getPreview() throws RecognitionManagerException {
+
+		synchronized (this) {
+			if (preview != null) return preview;
+			if (released) throw new RecognitionManagerException("Page " + name + " was released");
+
+			if (!replaced && previewScale < 1f && rasterizer.getRenditionScale(previewScale) < 1f) {
+				try {
+					preview = rasterizer.renderPage(pageIndex, previewScale);
+				} catch (IOException e) {
+					throw new RecognitionManagerException("Can't render preview of page " + name, e);
+				}
+				for (UnaryOperator<BufferedImage> transform : transforms) preview = transform.apply(preview);
+
+				return preview;
+			}
+		}
+
+		return getImage(); // Source can't produce the reduced rendition
+	}
+	/**
+	 * Returns the scale of the preview relative to the full raster.
+	 *
+	 * @return 1 if preview is the full raster.
+	 */
+	public synchronized float getPreviewScale() {
+
+		return replaced || previewScale >= 1f ? 1f : Math.min(rasterizer.getRenditionScale(previewScale), 1f);
+	}
+	/**
+	 * Replaces the raster and the preview with the results of the transformation. If page isn't rendered yet transformation is deferred until it is.
+	 *
+	 * @param transform
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	public void transform(UnaryOperator<BufferedImage> transform) throws RecognitionManagerException {
+
+		synchronized (this) {
+			transforms.add(transform);
+			if (preview != null) preview = transform.apply(preview);
+			if (image == null && !spilled) return;
+		}
+
+		replaceImage(transform.apply(getImage()));
+	}
+	/**
+	 * Returns whenever the document specifies the orientation of the page. Such page is rendered upright and isn't rotated during the classification.
+	 *
+	 * @return
+	 */
+	public boolean isOrientationKnown() {
+
+		return rasterizer.isOrientationKnown(pageIndex);
+	}
+	/**
+	 * Returns the text the page contains as text rather than as the image (see PageRasterizer.getTextLayer()). Such text can be used instead of OCR.
+	 * Coordinates are on the page in its original orientation.
+	 *
+	 * @return Text in the hOCR format or null if page has no usable text. Should be treated as read-only.
+	 *
+	 * @throws RecognitionManagerException if text can't be read.
+	 */
+	public synchronized Document getTextLayer() throws RecognitionManagerException {
+
+		if (!textLayerRead) {
+			if (released) throw new RecognitionManagerException("Page " + name + " was released");
+
+			try {
+				String hOCR = rasterizer.getTextLayer(pageIndex);
+				textLayer = hOCR != null ? Jsoup.parse(hOCR) : null;
+			} catch (IOException e) {
+				throw new RecognitionManagerException("Can't read text layer of page " + name, e);
+			}
+			textLayerRead = true;
+		}
+
+		return textLayer;
+	}
+	public synchronized boolean isRendered() {
+
+		return image != null || spilled;
+	}
+
+	/**
+	 * Renders the page ahead of its use. Page having the text layer isn't rendered, its text is read instead. Errors are ignored, they are reported once the page is actually used.
+	 */
+	void prefetch() {
+
+		synchronized (this) {
+			if (released || image != null || spilled) return;
+		}
+
+		try {
+			if (getTextLayer() == null) getImage();
+		} catch (RecognitionManagerException e) {}
+	}
+	synchronized long getSize() {
+
+		return size;
+	}
+	/**
+	 * Writes the raster to the disk and drops it from the memory.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void spill() throws IOException {
+
+		if (image == null || released) return;
+
+		ImageIO.write(image, "png", spillFile);
+		image = null;
+		spilled = true;
+	}
+	/**
+	 * Drops the raster once target is finished. Spill file is removed with the working directory of the target.
+	 */
+	void release() {
+
+		synchronized (this) {
+			image = null;
+			preview = null;
+			released = true;
+			transforms.clear();
+		}
+
+		store.released(this);
+	}
+
+	private void replaceImage(BufferedImage image) {
+
+		synchronized (this) {
+			this.image = image;
+			size = sizeOf(image);
+			spilled = false;
+		}
+
+		store.loaded(this);
+	}
+	private static long sizeOf(BufferedImage image) {
+
+		return (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+	}
+}
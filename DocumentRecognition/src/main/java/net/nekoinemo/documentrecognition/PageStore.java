@@ -0,0 +1,99 @@
+package net.nekoinemo.documentrecognition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the memory used by the page rasters of one RecognitionManager.
+ * When the budget is exceeded least recently used pages are spilled to the disk.
+ */
+class PageStore {
+
+	private final LinkedHashMap<PageImage, Long> loadedPages = new LinkedHashMap<>(16, 0.75f, true); // In memory pages and their accounted size, least recently used first
+	private long budget;
+	private long size = 0;
+
+	PageStore(long budget) {
+
+		this.budget = budget;
+	}
+
+	synchronized long getBudget() {
+
+		return budget;
+	}
+	void setBudget(long budget) {
+
+		synchronized (this) {
+			this.budget = budget;
+		}
+
+		spill(null);
+	}
+	synchronized long getSize() {
+
+		return size;
+	}
+
+	/**
+	 * Accounts the page which raster was set or read back from the disk.
+	 *
+	 * @param page
+	 */
+	void loaded(PageImage page) {
+
+		synchronized (this) {
+			Long previousSize = loadedPages.put(page, page.getSize());
+			size += page.getSize() - (previousSize != null ? previousSize : 0);
+		}
+
+		spill(page);
+	}
+	synchronized void touched(PageImage page) {
+
+		loadedPages.get(page); // Moves the page to the end of the access order
+	}
+	synchronized void released(PageImage page) {
+
+		Long previousSize = loadedPages.remove(page);
+		if (previousSize != null) size -= previousSize;
+	}
+
+	/**
+	 * Spills least recently used pages until the size fits the budget.
+	 *
+	 * @param keep Page that was just accessed and shouldn't be spilled.
+	 */
+	private void spill(PageImage keep) {
+
+		// Victims are chosen under the store lock, but written outside of it so other threads aren't blocked by the encoding
+		List<PageImage> victims = new ArrayList<>();
+		synchronized (this) {
+			Iterator<Map.Entry<PageImage, Long>> iterator = loadedPages.entrySet().iterator();
+			while (size > budget && iterator.hasNext()) {
+				Map.Entry<PageImage, Long> entry = iterator.next();
+				if (entry.getKey() == keep) continue;
+
+				size -= entry.getValue();
+				victims.add(entry.getKey());
+				iterator.remove();
+			}
+		}
+
+		for (PageImage victim : victims) {
+			try {
+				victim.spill();
+			} catch (IOException e) {
+				// Page stays in memory, it's accounted again so the budget isn't silently exceeded
+				synchronized (this) {
+					loadedPages.put(victim, victim.getSize());
+					size += victim.getSize();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,389 @@
+package net.nekoinemo.documentrecognition;
+
+import net.nekoinemo.documentrecognition.document.DocumentType;
+import net.nekoinemo.documentrecognition.document.IDocumentData;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEvent;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEventListener;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the file targets passing through the RecognitionManager: enqueued, started and completed ones, with the results of the latter.
+ * After a crash or stop() the new RecognitionManager resumes only the files that weren't completed and can replay the completed results to the listeners.
+ * Records are written to the disk in batches and synced once per sync interval, so targets completed during the last interval before a crash are processed again.
+ * Journal is compacted when opened, records of every file are reduced to its last state.
+ */
+public class RecognitionJournal implements AutoCloseable {
+
+	private static final byte RECORD_ENQUEUED = 1;
+	private static final byte RECORD_STARTED = 2;
+	private static final byte RECORD_COMPLETED = 3;
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024; // Larger length can only be a corrupted one
+
+	private final File file;
+	private final LinkedHashMap<String, FileState> entries = new LinkedHashMap<>(); // Absolute path of the file -> its state, in the enqueue order
+	private final Object channelLock = new Object(); // Taken before the journal lock when both are needed
+	private ByteArrayOutputStream pendingRecords = new ByteArrayOutputStream();
+	private FileChannel channel;
+	private IOException failure = null;
+	private long syncInterval = 200;
+	private volatile boolean isOpen = true;
+	private final Thread syncThread;
+
+	/**
+	 * Opens the journal, reading the state left by the previous runs. Records torn by a crash are dropped.
+	 *
+	 * @param file
+	 *
+	 * @throws IOException
+	 */
+	public RecognitionJournal(File file) throws IOException {
+
+		this.file = file;
+
+		if (file.exists()) read();
+		rewrite();
+
+		syncThread = new Thread(this::runSync, "RecognitionJournal " + file.getName() + " sync");
+		syncThread.setDaemon(true);
+		syncThread.start();
+	}
+
+	public File getFile() {
+
+		return file;
+	}
+	/**
+	 * Sets how often the appended records are written and synced to the disk. Default is 200 milliseconds.
+	 *
+	 * @param syncInterval Time in milliseconds.
+	 */
+	public synchronized void setSyncInterval(long syncInterval) {
+
+		this.syncInterval = syncInterval;
+	}
+	/**
+	 * Returns the files which were enqueued, but weren't completed. Files are listed in the enqueue order.
+	 *
+	 * @return
+	 */
+	public synchronized List<File> getUnfinishedFiles() {
+
+		ArrayList<File> files = new ArrayList<>();
+		entries.forEach((path, entry) -> {
+			if (entry.result == null) files.add(new File(path));
+		});
+
+		return files;
+	}
+	public synchronized int getCompletedCount() {
+
+		int count = 0;
+		for (FileState entry : entries.values()) if (entry.result != null) count++;
+
+		return count;
+	}
+	/**
+	 * Fires the events of the completed files to the listener, in the enqueue order.
+	 *
+	 * @param source   RecognitionManager set as the source of the events.
+	 * @param listener
+	 *
+	 * @return Number of the fired events.
+	 */
+	public int replay(IRecognitionManager source, RecognitionResultEventListener listener) {
+
+		ArrayList<JournaledResult> results = new ArrayList<>();
+		synchronized (this) {
+			for (FileState entry : entries.values()) if (entry.result != null) results.add(entry.result);
+		}
+
+		// Listener is called outside of the lock, it may push the files again
+		for (JournaledResult result : results) {
+			RecognitionResultEvent.RecognitionResultEventBuilder builder = new RecognitionResultEvent.RecognitionResultEventBuilder(source, result.id);
+			if (result.error != null) listener.recognitionError(builder.setCause(new RecognitionManagerException(result.error)).getEvent());
+			else listener.recognitionFinished(builder.setDocumentType(result.documentType).setDocumentData(result.documentData).setRecognitionPercentage(result.recognitionPercentage).setBudgetExceeded(result.budgetExceeded).getEvent());
+		}
+
+		return results.size();
+	}
+	/**
+	 * Removes the completed files from the journal. They won't be replayed afterwards.
+	 *
+	 * @throws IOException
+	 */
+	public void purgeCompleted() throws IOException {
+
+		synchronized (channelLock) {
+			synchronized (this) {
+				entries.values().removeIf(entry -> entry.result != null);
+			}
+			rewrite();
+		}
+	}
+	/**
+	 * Writes and syncs the appended records right away.
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+
+		synchronized (channelLock) {
+			ByteArrayOutputStream records;
+			synchronized (this) {
+				if (failure != null) throw failure;
+				if (pendingRecords.size() == 0) return;
+
+				records = pendingRecords;
+				pendingRecords = new ByteArrayOutputStream();
+			}
+
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+				while (buffer.hasRemaining()) channel.write(buffer);
+				channel.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+				}
+				throw e;
+			}
+		}
+	}
+	/**
+	 * Syncs the remaining records and closes the journal.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (!isOpen) return;
+
+		synchronized (this) {
+			isOpen = false;
+			notifyAll(); // Sync thread isn't interrupted, that would close the channel in the middle of the write
+		}
+		try {
+			syncThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			sync();
+		} finally {
+			synchronized (channelLock) {
+				channel.close();
+			}
+		}
+	}
+
+	void enqueued(File file, String id) throws IOException {
+
+		String path = file.getAbsolutePath();
+		synchronized (this) {
+			entries.remove(path); // File pushed again is reinserted as the newest
+			entries.put(path, new FileState(id));
+			append(RECORD_ENQUEUED, path, id, null);
+		}
+	}
+	void started(File file) throws IOException {
+
+		String path = file.getAbsolutePath();
+		synchronized (this) {
+			FileState entry = entries.get(path);
+			if (entry != null) entry.started = true;
+			append(RECORD_STARTED, path, null, null);
+		}
+	}
+	void completed(File file, RecognitionResultEvent event) throws IOException {
+
+		String path = file.getAbsolutePath();
+		JournaledResult result = new JournaledResult(event);
+		synchronized (this) {
+			FileState entry = entries.get(path);
+			if (entry == null) {
+				entry = new FileState(event.getDocumentID());
+				entries.put(path, entry);
+			}
+			entry.result = result;
+			append(RECORD_COMPLETED, path, null, result);
+		}
+	}
+
+	private void runSync() {
+
+		try {
+			while (true) {
+				synchronized (this) {
+					if (!isOpen) return;
+					wait(syncInterval);
+					if (!isOpen) return; // Remaining records are synced by close()
+				}
+
+				sync();
+			}
+		} catch (InterruptedException e) {
+		} catch (IOException e) {
+			// Failure is reported by the following appends
+		}
+	}
+	/**
+	 * Adds the record to the batch written by the next sync.
+	 * Record is the payload length, CRC32 of the payload and the payload itself: type, path and the type specific data.
+	 */
+	private void append(byte type, String path, String id, JournaledResult result) throws IOException {
+
+		if (failure != null) throw failure;
+		if (!isOpen) throw new IOException("Journal is closed");
+
+		writeRecord(new DataOutputStream(pendingRecords), type, path, id, result);
+	}
+	private static void writeRecord(DataOutputStream output, byte type, String path, String id, JournaledResult result) throws IOException {
+
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream payloadOutput = new DataOutputStream(payload);
+		payloadOutput.writeByte(type);
+		payloadOutput.writeUTF(path);
+		if (type == RECORD_ENQUEUED) payloadOutput.writeUTF(id);
+		if (type == RECORD_COMPLETED) {
+			ObjectOutputStream objectOutput = new ObjectOutputStream(payloadOutput);
+			objectOutput.writeObject(result);
+			objectOutput.flush();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(payload.toByteArray());
+
+		output.writeInt(payload.size());
+		output.writeInt((int) crc.getValue());
+		payload.writeTo(output);
+		output.flush();
+	}
+	private void read() throws IOException {
+
+		long remaining = file.length();
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while (true) {
+				byte[] payload;
+				int checksum;
+				try {
+					int length = input.readInt();
+					checksum = input.readInt();
+					remaining -= 8;
+					if (length < 0 || length > remaining || length > MAX_RECORD_SIZE) return; // Length torn by a crash isn't allocated, it can be anything
+
+					payload = new byte[length];
+					input.readFully(payload);
+					remaining -= length;
+				} catch (EOFException e) {
+					return; // End of the journal or the record torn by a crash
+				}
+
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum) return; // Rest of the journal can't be trusted
+
+				try {
+					readRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+				} catch (IOException | ClassNotFoundException | ClassCastException e) {
+					// Result written by the incompatible version of the data classes, the file is processed again
+				}
+			}
+		}
+	}
+	private void readRecord(DataInputStream input) throws IOException, ClassNotFoundException {
+
+		byte type = input.readByte();
+		String path = input.readUTF();
+
+		switch (type) {
+			case RECORD_ENQUEUED:
+				entries.remove(path);
+				entries.put(path, new FileState(input.readUTF()));
+				break;
+			case RECORD_STARTED:
+				FileState entry = entries.get(path);
+				if (entry != null) entry.started = true;
+				break;
+			case RECORD_COMPLETED:
+				JournaledResult result = (JournaledResult) new ObjectInputStream(input).readObject();
+				entries.computeIfAbsent(path, ignored -> new FileState(result.id)).result = result;
+				break;
+		}
+	}
+	/**
+	 * Replaces the journal with the current state of the files. Written under a temporary name first, so a crash leaves either the old or the new journal.
+	 */
+	private void rewrite() throws IOException {
+
+		synchronized (channelLock) {
+			Path temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+			synchronized (this) {
+				try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+					DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+					for (Map.Entry<String, FileState> entry : entries.entrySet()) {
+						writeRecord(output, RECORD_ENQUEUED, entry.getKey(), entry.getValue().id, null);
+						if (entry.getValue().started) writeRecord(output, RECORD_STARTED, entry.getKey(), null, null);
+						if (entry.getValue().result != null) writeRecord(output, RECORD_COMPLETED, entry.getKey(), null, entry.getValue().result);
+					}
+					output.flush();
+					stream.getFD().sync();
+				}
+				pendingRecords = new ByteArrayOutputStream(); // Already contained in the state
+			}
+
+			if (channel != null) channel.close();
+			Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+	}
+
+	private static class FileState {
+
+		private final String id;
+		private boolean started = false;
+		private JournaledResult result = null;
+
+		private FileState(String id) {
+
+			this.id = id;
+		}
+	}
+	/**
+	 * Result of the completed file as stored in the journal. Errors are kept as their description.
+	 */
+	private static class JournaledResult implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String id;
+		private final DocumentType documentType;
+		private final IDocumentData documentData;
+		private final int recognitionPercentage;
+		private final boolean budgetExceeded;
+		private final String error;
+
+		private JournaledResult(RecognitionResultEvent event) {
+
+			this.id = event.getDocumentID();
+			this.documentType = event.getDocumentType();
+			this.documentData = event.getDocumentData();
+			this.recognitionPercentage = event.getRecognitionPercentage();
+			this.budgetExceeded = event.isBudgetExceeded();
+			this.error = event.getCause() != null ? String.valueOf(event.getCause().getMessage()) : null;
+		}
+	}
+}
@@ -1,12 +1,22 @@
 package net.nekoinemo.documentrecognition;
 
+import net.nekoinemo.documentrecognition.document.DocumentClassifier;
 import net.nekoinemo.documentrecognition.document.DocumentType;
 import net.nekoinemo.documentrecognition.document.IDocumentDataBuilder;
 import net.nekoinemo.documentrecognition.event.*;
+import net.nekoinemo.documentrecognition.ocr.OCREngine;
+import net.nekoinemo.documentrecognition.ocr.OCRSession;
 import net.nekoinemo.documentrecognition.processing.ImageHelper;
-import net.sourceforge.tess4j.*;
+import net.nekoinemo.documentrecognition.processing.ImagePageRasterizer;
+import net.nekoinemo.documentrecognition.processing.LayoutClassifier;
+import net.nekoinemo.documentrecognition.processing.OpenCVHelper;
+import net.nekoinemo.documentrecognition.processing.OrientationEstimator;
+import net.nekoinemo.documentrecognition.processing.PageRasterizer;
+import net.nekoinemo.documentrecognition.processing.PdfPageRasterizer;
+import net.sourceforge.tess4j.TessAPI;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
@@ -14,15 +24,45 @@ import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class RecognitionManager implements IRecognitionManager {
 
+	/**
+	 * Shared instance kept for the compatibility. Prefer creating own instances with the constructor.
+	 */
 	public static final RecognitionManager INSTANCE;
 
-	private static final FileFilter SUPPORTED_FILES_FILTER = new FileFilter() {
+	private static final String LANGUAGE = "eng";
+	private static final AtomicInteger instanceCounter = new AtomicInteger();
+	private static volatile String tesseractVersion = null;
+	private static final RecognitionSettings CLASSIFICATION_SETTINGS = new RecognitionSettings(0, RecognitionSettings.ENGINE_MODE_BASIC, RecognitionSettings.PAGESEG_MODE_SINGLE_BLOCK);
+
+	static final FileFilter SUPPORTED_FILES_FILTER = new FileFilter() {
 
 		// List of all supported extensions. Only files with those will be added by pushAllFiles()
 		private final ArrayList SUPPORTED_EXTENSIONS = new ArrayList() {{
@@ -43,27 +83,58 @@ public class RecognitionManager implements IRecognitionManager {
 		}
 	};
 
-	private RecognitionManagerEventListener eventListener = null;
-	private Thread thread;
-	private boolean isRunning = false;
-	private RecognitionTarget currentTarget = null;
-
-	private final LinkedBlockingQueue<RecognitionTarget> targets;
-	private RecognitionSettings[] recognitionSettings = RecognitionSettings.DEFAULT;
-	private final Tesseract tesseract;
+	private volatile RecognitionManagerEventListener eventListener = null;
+	private final Object eventLock = new Object(); // Serializes the listener calls. Unlike the manager's monitor it's never held while waiting for the other threads
+	private final Object lifecycleLock = new Object(); // Serializes start() and stop(), which wait for the threads without holding the manager's monitor
+	private final Object drainLock = new Object(); // Notified when the last pending target is completed
+	private final EnumMap<RecognitionStage, PipelineStage> stages = new EnumMap<>(RecognitionStage.class);
+	private final EnumMap<RecognitionStage, Integer> stageThreadCounts = new EnumMap<>(RecognitionStage.class);
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int stageQueueCapacity = threadCount * 2;
+	private volatile long batchWaitLimit = 60000;
+	private final EnumMap<RecognitionPriority, RecognitionScheduler.QueueWaitStatistics> queueWaitStatistics = new EnumMap<>(RecognitionPriority.class); // End to end, over all stage queues
+	private int speculativeCascadeWidth = 1;
+	private volatile long timeBudget = 0;
+	private final PageStore pageStore = new PageStore(Runtime.getRuntime().maxMemory() / 4);
+	private ExecutorService speculationExecutor = null;
+	private volatile int rasterizationDpi = PdfPageRasterizer.DEFAULT_DPI;
+	private volatile float classificationScale = 0.5f;
+	private volatile float orientationConfidence = OrientationEstimator.DEFAULT_MIN_CONFIDENCE;
+	private volatile boolean layoutClassification = false;
+	private int rasterizationWorkers = 1;
+	private ExecutorService renderExecutor = null;
+	private volatile boolean isRunning = false;
+	private final Set<RecognitionTarget> currentTargets = ConcurrentHashMap.newKeySet();
+
+	private final RecognitionScheduler targets;
+	private AdmissionPolicy admissionPolicy = AdmissionPolicy.BLOCK;
+	private long admissionTimeout = 1000;
+	private final Set<Thread> feeders = ConcurrentHashMap.newKeySet();
+	private final Set<SpoolDirectory> spools = ConcurrentHashMap.newKeySet();
+	private final String name;
+	private final AtomicLong targetCounter = new AtomicLong();
+	private final AtomicInteger pendingTargets = new AtomicInteger(); // Targets that were queued and aren't completed yet
+	// Settings can be swapped while running. Targets capture the settings at push, engines are recreated when they notice the new tessdata path
+	private volatile RecognitionSettings[] recognitionSettings = RecognitionSettings.DEFAULT;
+	private volatile String tessDataPath = null;
+	private volatile ResultCache resultCache = null;
+	private volatile RecognitionJournal journal = null;
+	// Tesseract engines aren't thread safe, so every worker thread gets its own one
+	private final ThreadLocal<OCREngine> engines = new ThreadLocal<>();
 
 	private File temporaryDirectoriesLocation = null;
-	private File debugOutputDirectory = null;
-	private File workingImagesDirectory = null;
+	private volatile File debugOutputDirectory = null;
+	private volatile File workingImagesDirectory = null;
 
-	private boolean debugOutput = false;
+	private volatile boolean debugOutput = false;
 	private boolean isInitialized = false;
+	private boolean checkTestRecognition = true;
 	static {
-		INSTANCE = new RecognitionManager();
+		INSTANCE = new RecognitionManager("default");
 	}
 
 	/**
-	 * Returns an instance of a class.
+	 * Returns the shared instance of a class.
 	 *
 	 * @return
 	 */
@@ -72,12 +143,18 @@ public class RecognitionManager implements IRecognitionManager {
 		return INSTANCE;
 	}
 
-	private RecognitionManager() {
+	public RecognitionManager() {
 
-		tesseract = Tesseract.getInstance();
-		tesseract.setLanguage("eng");
+		this("manager" + instanceCounter.incrementAndGet());
+	}
+	/**
+	 * @param name Name of the instance. Used for the thread names and the temporary folders, so instances sharing the temporary directory location should have different names.
+	 */
+	public RecognitionManager(String name) {
 
-		targets = new LinkedBlockingQueue<>();
+		this.name = name;
+		targets = new RecognitionScheduler();
+		for (RecognitionPriority priority : RecognitionPriority.values()) queueWaitStatistics.put(priority, new RecognitionScheduler.QueueWaitStatistics());
 	}
 
 	@Override
@@ -102,53 +179,65 @@ public class RecognitionManager implements IRecognitionManager {
 				throw new RecognitionManagerException("Can't create temporary directory", e);
 			}
 
-			// Create workingImages folder
-			workingImagesDirectory = new File(temporaryDirectoriesLocation, "workingImages");
-			workingImagesDirectory.mkdir();
+			// Create workingImages folder. Each instance works in its own subfolder, so cleaning it doesn't touch files of the other instances
+			workingImagesDirectory = new File(new File(temporaryDirectoriesLocation, "workingImages"), name);
+			workingImagesDirectory.mkdirs();
 
 			// Create debug folder (if debugOutput is used)
-			if (debugOutput) {
-				debugOutputDirectory = new File(temporaryDirectoriesLocation, "debug");
-				debugOutputDirectory.mkdir();
-			}
-
-			// Use default settings if none are specified
-			if (recognitionSettings == null || recognitionSettings.length == 0)
-				recognitionSettings = RecognitionSettings.DEFAULT;
-
-			// Recognition test
-			BufferedImage testImage;
-			try {
-				testImage = ImageIO.read(RecognitionManager.class.getResourceAsStream("testText.png"));
-			} catch (IOException e) {
-				throw new RecognitionManagerException("Can't load test image.", e);
-			}
-
-			tesseract.setOcrEngineMode(TessAPI.TessOcrEngineMode.OEM_DEFAULT);
-			tesseract.setPageSegMode(TessAPI.TessPageSegMode.PSM_SINGLE_WORD);
-			tesseract.setHocr(false);
-
-			// Test recognition with the provided test image this will cause Tesseract to throw an exception if incorrect settings were set
-			String result;
-			try {
-				result = tesseract.doOCR(testImage);
-			} catch (TesseractException e) {
-				throw new RecognitionManagerException("Can't do recognition on a test image. Check if tessdata path is specified correctly and proper language files are present", e);
-			}
+			if (debugOutput) createDebugOutputDirectory();
 
-			// This will check if whatever Tesseract returned matches the text image contained.
-			// If it didn't then there's probably something seriously wrong with either Tesseract installed ot tessdata provided
-			if (testRecognition && !result.trim().equalsIgnoreCase("test"))
-				throw new RecognitionManagerException("Tesseract failed to recognize test image. Correct language/trained data may be missing from tessdata folder. Continuing with current settings may yeld low quality recognition results.");
+			testRecognition(tessDataPath, testRecognition);
 		} catch (RecognitionManagerException e) {
 			fireSystemException("RecognitionManager initialization failed", e);
 			throw e;
 		}
 
-		tesseract.setHocr(true); // Sets the output format to the hOCR (see http://en.wikipedia.org/wiki/HOCR)
+		checkTestRecognition = testRecognition;
 		isInitialized = true;
 	}
+	/**
+	 * Recognizes the provided test image. This will cause Tesseract to throw an exception if incorrect settings were set.
+	 *
+	 * @param dataPath    Path to the tessdata directory to test.
+	 * @param checkResult If true - recognized text should match the text of the test image.
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	private void testRecognition(String dataPath, boolean checkResult) throws RecognitionManagerException {
+
+		BufferedImage testImage;
+		try {
+			testImage = ImageIO.read(RecognitionManager.class.getResourceAsStream("testText.png"));
+		} catch (IOException e) {
+			throw new RecognitionManagerException("Can't load test image.", e);
+		}
+
+		OCREngine testEngine = new OCREngine(dataPath, LANGUAGE);
+		String result;
+		try {
+			result = testEngine.recognize(testImage, null, TessAPI.TessOcrEngineMode.OEM_DEFAULT, TessAPI.TessPageSegMode.PSM_SINGLE_WORD, false);
+		} catch (RecognitionManagerException e) {
+			throw new RecognitionManagerException("Can't do recognition on a test image. Check if tessdata path is specified correctly and proper language files are present", e);
+		} finally {
+			testEngine.dispose();
+		}
+
+		// This will check if whatever Tesseract returned matches the text image contained.
+		// If it didn't then there's probably something seriously wrong with either Tesseract installed ot tessdata provided
+		if (checkResult && !result.trim().equalsIgnoreCase("test"))
+			throw new RecognitionManagerException("Tesseract failed to recognize test image. Correct language/trained data may be missing from tessdata folder. Continuing with current settings may yeld low quality recognition results.");
+	}
+	private void createDebugOutputDirectory() {
+
+		File directory = new File(new File(temporaryDirectoriesLocation, "debug"), name);
+		directory.mkdirs();
+		debugOutputDirectory = directory;
+	}
+
+	public String getName() {
 
+		return name;
+	}
 	@Override
 	public boolean isRunning() {
 
@@ -163,343 +252,1340 @@ public class RecognitionManager implements IRecognitionManager {
 
 		return new ArrayList<>(targets);
 	}
-	public RecognitionTarget getCurrentTarget() {
+	@Override
+	public RecognitionScheduler.QueueWaitStatistics getQueueWaitStatistics(RecognitionPriority priority) {
 
-		return currentTarget;
+		synchronized (queueWaitStatistics) {
+			return queueWaitStatistics.get(priority).copy();
+		}
 	}
+	@Override
+	public synchronized void setBatchWaitLimit(long batchWaitLimit) {
 
+		this.batchWaitLimit = batchWaitLimit;
+		targets.setBatchWaitLimit(batchWaitLimit);
+		for (PipelineStage stage : stages.values()) stage.input.setBatchWaitLimit(batchWaitLimit);
+	}
 	@Override
-	public void setEventListener(RecognitionManagerEventListener eventListener) {
+	public void setQueueCapacity(int capacity) throws RecognitionManagerException {
 
-		synchronized (this) {
-			this.eventListener = eventListener;
+		if (capacity < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("Queue capacity should be positive");
+			fireMiscException("Can't change queue capacity", exception);
+
+			throw exception;
 		}
+
+		targets.setCapacity(capacity);
 	}
 	@Override
-	public void removeEventListener() {
+	public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
 
-		synchronized (this) {
-			this.eventListener = null;
-		}
+		this.admissionPolicy = admissionPolicy;
+	}
+	@Override
+	public void setAdmissionTimeout(long admissionTimeout) {
+
+		this.admissionTimeout = admissionTimeout;
+	}
+	public ArrayList<RecognitionTarget> getCurrentTargets() {
+
+		return new ArrayList<>(currentTargets);
 	}
+	public int getThreadCount() {
 
+		return threadCount;
+	}
 	@Override
-	public void setTessDataPath(String value) throws RecognitionManagerException {
+	public void setThreadCount(int threadCount) throws RecognitionManagerException {
 
 		if (isRunning) {
 			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
-			fireMiscException("Can't change tessdata path", exception);
+			fireMiscException("Can't change thread count", exception);
 
 			throw exception;
 		}
+		if (threadCount < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("Thread count should be positive");
+			fireMiscException("Can't change thread count", exception);
 
-		tesseract.setDatapath(value);
+			throw exception;
+		}
+
+		this.threadCount = threadCount;
 	}
-	public boolean isDebugOutput() {
+	public int getStageThreadCount(RecognitionStage stage) {
 
-		return debugOutput;
+		Integer count = stageThreadCounts.get(stage);
+		if (count != null) return count;
+
+		return threadCount;
 	}
 	@Override
-	public void setDebugOutput(boolean debugOutput) throws RecognitionManagerException {
+	public void setStageThreadCount(RecognitionStage stage, int threadCount) throws RecognitionManagerException {
 
 		if (isRunning) {
 			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
-			fireMiscException("Can't change debug output", exception);
+			fireMiscException("Can't change thread count", exception);
 
 			throw exception;
 		}
+		if (threadCount < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("Thread count should be positive");
+			fireMiscException("Can't change thread count", exception);
 
-		this.debugOutput = debugOutput;
-	}
-	public File getDebugOutputDirectory() {
+			throw exception;
+		}
 
-		return debugOutputDirectory;
+		stageThreadCounts.put(stage, threadCount);
 	}
-	public File getDebugFile(String name){
+	@Override
+	public void setRasterizationDpi(int dpi) throws RecognitionManagerException {
 
-		return new File(INSTANCE.debugOutputDirectory, name);
-	}
-	public File getWorkingImagesDirectory() {
+		if (dpi < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("DPI should be positive");
+			fireMiscException("Can't change rasterization DPI", exception);
 
-		return workingImagesDirectory;
+			throw exception;
+		}
+
+		rasterizationDpi = dpi;
 	}
 	@Override
-	public void setTemporaryDirectoriesLocation(File temporaryDirectoriesLocation) throws RecognitionManagerException {
+	public void setClassificationScale(float scale) throws RecognitionManagerException {
 
-		if (isRunning) {
-			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
-			fireMiscException("Can't change temporary directories location", exception);
+		if (scale <= 0f || scale > 1f) {
+			RecognitionManagerException exception = new RecognitionManagerException("Scale should be in (0, 1]");
+			fireMiscException("Can't change classification scale", exception);
 
 			throw exception;
 		}
 
-		this.temporaryDirectoriesLocation = temporaryDirectoriesLocation;
+		classificationScale = scale;
 	}
 	@Override
-	public void setRecognitionSettings(RecognitionSettings[] recognitionSettings) throws RecognitionManagerException {
+	public void setOrientationConfidence(float confidence) throws RecognitionManagerException {
 
-		if (isRunning) {
-			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
-			fireMiscException("Can't change settings", exception);
+		if (confidence < 0f) {
+			RecognitionManagerException exception = new RecognitionManagerException("Confidence can't be negative");
+			fireMiscException("Can't change orientation confidence", exception);
 
 			throw exception;
 		}
 
-		this.recognitionSettings = recognitionSettings;
+		orientationConfidence = confidence;
 	}
 	@Override
-	public void pushAllFiles(File directory, RecognitionResultEventListener eventListener) throws InterruptedException {
+	public void setLayoutClassification(boolean enabled) throws RecognitionManagerException {
+
+		if (enabled) try {
+			OpenCVHelper.loadOpenCVLibs();
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			RecognitionManagerException exception = new RecognitionManagerException("Can't load OpenCV libraries", e);
+			fireMiscException("Can't enable layout classification", exception);
 
-		for (File file : directory.listFiles(SUPPORTED_FILES_FILTER)) {
-			pushFile(file, eventListener);
+			throw exception;
 		}
-	}
-	@Override
-	public void pushFile(File file, RecognitionResultEventListener eventListener) throws InterruptedException {
 
-		targets.put(new RecognitionTarget(file.getName(), file, eventListener));
+		layoutClassification = enabled;
 	}
-
 	@Override
-	public synchronized void start() throws RecognitionManagerException {
+	public void setRasterizationWorkers(int workers) throws RecognitionManagerException {
 
-		if (isRunning) return;
-		if (!isInitialized) {
-			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager wasn't initialized");
-			fireSystemException("Can't start RecognitionManager", exception);
+		if (isRunning) {
+			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
+			fireMiscException("Can't change rasterization workers", exception);
 
 			throw exception;
 		}
+		if (workers < 0) {
+			RecognitionManagerException exception = new RecognitionManagerException("Rasterization workers count can't be negative");
+			fireMiscException("Can't change rasterization workers", exception);
 
-		isRunning = true;
-		thread = new Thread(this, "RecognitionManager thread"); // Once stopped thread can't be restarted so new instance is created
-		thread.start();
+			throw exception;
+		}
+
+		rasterizationWorkers = workers;
 	}
 	@Override
-	public synchronized void stop() throws InterruptedException {
+	public void setPageMemoryBudget(long pageMemoryBudget) {
 
-		if (!isRunning) return;
+		pageStore.setBudget(pageMemoryBudget);
+	}
+	/**
+	 * Returns the memory currently used by the in-memory page rasters.
+	 *
+	 * @return Size in bytes.
+	 */
+	public long getPageMemoryUsage() {
 
-		isRunning = false;
-		isInitialized = false; // init() checks if settings are valid so this forces init() to be performed before each start()
-		thread.join();
+		return pageStore.getSize();
 	}
+	@Override
+	public void setTimeBudget(long timeBudget) {
 
+		this.timeBudget = timeBudget;
+	}
 	@Override
-	public void run() {
+	public void setResultCache(ResultCache resultCache) {
 
-		cleanWorkingDirectory(); // Clears the "workingImages" folder in the temporary directory
+		this.resultCache = resultCache;
+	}
+	@Override
+	public ResultCache getResultCache() {
 
-		// Main loop. Will run until stop() is called
-		while (isRunning) {
-			currentTarget = null;
-			try {
-				currentTarget = targets.poll(1000, TimeUnit.MILLISECONDS); // Waits 1s for target to appear then moves to the next iteration
-			} catch (InterruptedException e) {}
+		return resultCache;
+	}
+	@Override
+	public void setJournal(RecognitionJournal journal) {
 
-			if (currentTarget != null) {
-				try {
-					doRecognition(currentTarget, recognitionSettings);
-					cleanWorkingDirectory(); // Clears the "workingImages" folder in the temporary directory
-				} catch (RecognitionManagerException e) {
-					currentTarget.getEventListener().recognitionError(new RecognitionResultEvent.RecognitionResultEventBuilder(currentTarget.getId()).setCause(e).getEvent()); // Notify even listener that file recognition failed
-					fireRecognitionException("Failed to recognize file", currentTarget.getFile().getAbsolutePath(), e);
-				}
-			}
-		}
+		this.journal = journal;
+	}
+	@Override
+	public RecognitionJournal getJournal() {
 
-		// Notify all remaining targets that recognition was aborted
-		if (targets.size() > 0) {
-			targets.forEach(target -> target.getEventListener().recognitionError(new RecognitionResultEvent.RecognitionResultEventBuilder(target.getId()).setCause(new RecognitionManagerException("Recognition process was aborted")).getEvent()));
-			targets.clear();
-		}
+		return journal;
 	}
+	@Override
+	public void setSpeculativeCascadeWidth(int width) throws RecognitionManagerException {
 
-	public String recognize(File target, Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+		if (isRunning) {
+			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
+			fireMiscException("Can't change speculative cascade width", exception);
 
-		tesseract.setOcrEngineMode(recognitionSettings.getEngineMode());
-		tesseract.setPageSegMode(recognitionSettings.getPageSegMode());
+			throw exception;
+		}
+		if (width < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("Speculative cascade width should be positive");
+			fireMiscException("Can't change speculative cascade width", exception);
 
-		try {
-			return tesseract.doOCR(target, area);
-		} catch (TesseractException e) {
-			throw new RecognitionManagerException(e);
+			throw exception;
 		}
+
+		speculativeCascadeWidth = width;
 	}
-	public String recognize(BufferedImage target, Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+	@Override
+	public void setStageQueueCapacity(int capacity) throws RecognitionManagerException {
+
+		if (isRunning) {
+			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
+			fireMiscException("Can't change stage queue capacity", exception);
 
-		tesseract.setOcrEngineMode(recognitionSettings.getEngineMode());
-		tesseract.setPageSegMode(recognitionSettings.getPageSegMode());
+			throw exception;
+		}
+		if (capacity < 1) {
+			RecognitionManagerException exception = new RecognitionManagerException("Stage queue capacity should be positive");
+			fireMiscException("Can't change stage queue capacity", exception);
 
-		try {
-			return tesseract.doOCR(target, area);
-		} catch (TesseractException e) {
-			throw new RecognitionManagerException(e);
+			throw exception;
 		}
-	}
 
-	private void doRecognition(RecognitionTarget target, RecognitionSettings[] recognitionSettings) throws RecognitionManagerException {
+		this.stageQueueCapacity = capacity;
+	}
+	@Override
+	public int getStageQueueSize(RecognitionStage stage) {
 
-		// Set up debug output file
-		OutputStreamWriter debugWriter = null;
-		if (debugOutput) {
-			File debugFile = new File(debugOutputDirectory, target.getId() + ".txt");
-			try {
-				debugWriter = new OutputStreamWriter(new FileOutputStream(debugFile));
-			} catch (IOException e) {
-				fireMiscException("Can't make debug output file: " + debugFile.getAbsolutePath(), e);
-			}
-		}
+		if (stage == RecognitionStage.RASTERIZATION) return targets.size();
 
-		try {
-			target.prepare();
+		PipelineStage pipelineStage = stages.get(stage);
+		return pipelineStage == null ? 0 : pipelineStage.input.size();
+	}
 
-			// Save copy of image in debug folder
-			if(isDebugOutput()){
-				target.getImages().forEach(imageFile -> {
-					try {
-						FileUtils.copyFileToDirectory(imageFile, debugOutputDirectory);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				});
-			}
+	@Override
+	public void setEventListener(RecognitionManagerEventListener eventListener) {
 
-			if (target.getDocumentType() == null) {
-				target.getEventListener().recognitionFinished(new RecognitionResultEvent.RecognitionResultEventBuilder(target.getId()).getEvent());
-				return;
-			}
+		this.eventListener = eventListener;
+	}
+	@Override
+	public void removeEventListener() {
 
-			IDocumentDataBuilder builder = target.getDocumentType().getBuilder();
-			builder.processImage(target, recognitionSettings);
+		this.eventListener = null;
+	}
 
-			if (debugWriter != null) try {
-				debugWriter.write(target.getId() + '\t' + target.getDocumentType() + '\t' + builder.getCompleteness() + System.lineSeparator());
-				debugWriter.write(builder.getDocumentData().toString(true) + System.lineSeparator());
-				debugWriter.write(builder.getDebugText());
-			} catch (IOException e) {
-				fireMiscException("Can't write to debug file", e);
-			}
+	@Override
+	public synchronized void setTessDataPath(String value) throws RecognitionManagerException {
 
-			target.getEventListener().recognitionFinished(new RecognitionResultEvent.RecognitionResultEventBuilder(target.getId()).setDocumentType(target.getDocumentType()).setDocumentData(builder.getDocumentData()).setRecognitionPercentage(builder.getCompleteness()).getEvent());
-		} finally {
-			try {
-				if (debugWriter != null) {
-					debugWriter.close();
-				}
-			} catch (IOException e) {}
+		if (!isRunning) {
+			tessDataPath = value;
+			isInitialized = false; // New path is tested by init()
+			return;
 		}
-	}
-	private void cleanWorkingDirectory() {
 
-		for (File file : workingImagesDirectory.listFiles()) {
-			file.delete();
+		// Running pipeline keeps going with the old path if the new one doesn't work
+		try {
+			testRecognition(value, checkTestRecognition);
+		} catch (RecognitionManagerException e) {
+			fireMiscException("Can't change tessdata path", e);
+			throw e;
 		}
+
+		tessDataPath = value; // Engines of the worker threads are recreated before recognizing the next target
 	}
+	public boolean isDebugOutput() {
 
-	// Event triggers
+		return debugOutput && debugOutputDirectory != null;
+	}
+	@Override
+	public synchronized void setDebugOutput(boolean debugOutput) throws RecognitionManagerException {
 
-	void fireSystemException(String message, Throwable cause) {
+		// Debug folder is created by init(), if it was already done - create it right away
+		if (debugOutput && isInitialized && debugOutputDirectory == null) createDebugOutputDirectory();
 
-		synchronized (eventListener) {
-			RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder().setMessage(message).setCause(cause).getEvent();
+		this.debugOutput = debugOutput;
+	}
+	public File getDebugOutputDirectory() {
 
-			if (eventListener != null) eventListener.systemExceptionOccurred(event);
-		}
+		return debugOutputDirectory;
 	}
-	void fireRecognitionException(String message, String file, Throwable cause) {
+	public File getDebugFile(String name){
 
-		synchronized (eventListener) {
-			RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder().setMessage(message).setFileCause(file).setCause(cause).getEvent();
+		return new File(debugOutputDirectory, name);
+	}
+	public File getWorkingImagesDirectory() {
 
-			if (eventListener != null) eventListener.recognitionExceptionOccurred(event);
-		}
+		return workingImagesDirectory;
 	}
-	void fireMiscException(String message, Throwable cause) {
+	@Override
+	public void setTemporaryDirectoriesLocation(File temporaryDirectoriesLocation) throws RecognitionManagerException {
 
-		synchronized (eventListener) {
-			RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder().setMessage(message).setCause(cause).getEvent();
+		if (isRunning) {
+			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager is running!");
+			fireMiscException("Can't change temporary directories location", exception);
 
-			if (eventListener != null) eventListener.miscellaneousExceptionOccurred(event);
+			throw exception;
 		}
-	}
 
-	/**
-	 * Structure type class that encapsulates the file to be processed
-	 */
-	public class RecognitionTarget {
+		this.temporaryDirectoriesLocation = temporaryDirectoriesLocation;
+		debugOutputDirectory = null;
+		isInitialized = false;
+	}
+	@Override
+	public void setRecognitionSettings(RecognitionSettings[] recognitionSettings) throws RecognitionManagerException {
 
-		private final String id;
-		private final File file;
-		private final RecognitionResultEventListener eventListener;
-		private ArrayList<File> images = new ArrayList<>();
-		private int rotationAngle = 0;
-		private DocumentType documentType = null;
+		// Use default settings if none are specified. Array is copied so later changes by the caller don't affect the queued targets
+		if (recognitionSettings == null || recognitionSettings.length == 0) this.recognitionSettings = RecognitionSettings.DEFAULT;
+		else this.recognitionSettings = recognitionSettings.clone();
+	}
+	@Override
+	public CompletableFuture<List<RecognitionResultEvent>> pushAllFiles(File directory, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException {
 
-		public RecognitionTarget(String id, File file, RecognitionResultEventListener eventListener) {
+		return pushAllFiles(directory, eventListener, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<List<RecognitionResultEvent>> pushAllFiles(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
 
-			this.id = id;
-			this.file = file;
-			this.eventListener = eventListener;
-		}
+		return pushBatch(Arrays.asList(directory.listFiles(SUPPORTED_FILES_FILTER)), eventListener, options);
+	}
+	@Override
+	public CompletableFuture<List<RecognitionResultEvent>> resume(RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
 
-		public String getId() {
+		RecognitionJournal journal = this.journal;
+		if (journal == null) {
+			RecognitionManagerException exception = new RecognitionManagerException("Journal isn't set");
+			fireMiscException("Can't resume", exception);
 
-			return id;
+			throw exception;
 		}
-		public File getFile() {
 
-			return file;
-		}
-		public RecognitionResultEventListener getEventListener() {
+		List<File> files = journal.getUnfinishedFiles();
+		files.removeIf(file -> !file.isFile()); // Removed since, there is nothing to resume
 
-			return eventListener;
-		}
-		public ArrayList<File> getImages() {
+		return pushBatch(files, eventListener, options);
+	}
+	@Override
+	public int replayJournal(RecognitionResultEventListener eventListener) throws RecognitionManagerException {
 
-			return new ArrayList<>(images);
-		}
-		public int getRotationAngle() {
+		RecognitionJournal journal = this.journal;
+		if (journal == null) {
+			RecognitionManagerException exception = new RecognitionManagerException("Journal isn't set");
+			fireMiscException("Can't replay journal", exception);
 
-			return rotationAngle;
+			throw exception;
 		}
-		public DocumentType getDocumentType() {
 
-			return documentType;
-		}
+		return journal.replay(this, eventListener);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushFile(File file, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException {
 
-		/**
-		 * Extracts images from the file, then determines document type and orientation. The rotates all extracted images to the correct orientation
-		 *
-		 * @throws RecognitionManagerException
-		 */
-		protected void prepare() throws RecognitionManagerException {
+		return pushFile(file, eventListener, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushFile(File file, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
 
-			try {
-				extractImages();
-			} catch (IOException e) {
-				throw makeException("Error extracting images", e);
+		return push(new RecognitionTarget(file.getName(), file, eventListener, options));
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> submit(File file) throws InterruptedException, RecognitionManagerException {
+
+		return pushFile(file, null);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> submit(File file, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
+
+		return pushFile(file, null, options);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> submit(InputStream stream, String id) throws IOException, InterruptedException, RecognitionManagerException {
+
+		return submit(stream, id, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> submit(InputStream stream, String id, RecognitionOptions options) throws IOException, InterruptedException, RecognitionManagerException {
+
+		return pushStream(stream, id, null, options);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushStream(InputStream stream, String id, RecognitionResultEventListener eventListener) throws IOException, InterruptedException, RecognitionManagerException {
+
+		return pushStream(stream, id, eventListener, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushStream(InputStream stream, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws IOException, InterruptedException, RecognitionManagerException {
+
+		return pushBytes(IOUtils.toByteArray(stream), null, id, eventListener, options);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushBytes(byte[] data, String mimeType, String id, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException {
+
+		return pushBytes(data, mimeType, id, eventListener, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushBytes(byte[] data, String mimeType, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
+
+		return pushBytes(ByteBuffer.wrap(data), mimeType, id, eventListener, options);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushBytes(ByteBuffer data, String mimeType, String id, RecognitionResultEventListener eventListener) throws InterruptedException, RecognitionManagerException {
+
+		return pushBytes(data, mimeType, id, eventListener, RecognitionOptions.DEFAULT);
+	}
+	@Override
+	public CompletableFuture<RecognitionResultEvent> pushBytes(ByteBuffer data, String mimeType, String id, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
+
+		return push(new RecognitionTarget(id, data, mimeType, eventListener, options));
+	}
+
+	@Override
+	public CompletableFuture<Integer> pushAllFilesLazily(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+		CompletableFuture<Integer> batch = new CompletableFuture<>();
+		AtomicInteger pending = new AtomicInteger(1); // Extra count is held by the feeder until all files are pushed
+		AtomicInteger pushed = new AtomicInteger();
+
+		Thread feeder = new Thread(() -> {
+			// Directory is listed lazily as well, so neither files list nor targets are built up front
+			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory.toPath())) {
+				for (Path path : directoryStream) {
+					File file = path.toFile();
+					if (!SUPPORTED_FILES_FILTER.accept(file)) continue;
+
+					RecognitionTarget target = new RecognitionTarget(file.getName(), file, eventListener, options);
+					pending.incrementAndGet();
+					target.getResult().whenComplete((event, cause) -> {
+						if (pending.decrementAndGet() == 0) batch.complete(pushed.get());
+					});
+
+					push(target, AdmissionPolicy.BLOCK); // Waits for the free space regardless of the admission policy
+					pushed.incrementAndGet();
+				}
+
+				if (pending.decrementAndGet() == 0) batch.complete(pushed.get());
+			} catch (IOException | RecognitionManagerException e) {
+				batch.completeExceptionally(e);
+			} catch (InterruptedException e) {
+				batch.completeExceptionally(new RecognitionManagerException("Recognition process was aborted"));
+			} finally {
+				feeders.remove(Thread.currentThread());
+			}
+		}, "RecognitionManager " + name + " feeder");
+
+		feeders.add(feeder);
+		feeder.setDaemon(true);
+		feeder.start();
+
+		return batch;
+	}
+
+	@Override
+	public SpoolDirectory openSpool(File directory, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+		SpoolDirectory spool = new SpoolDirectory(this, directory, eventListener, options, threadCount * 2);
+		spools.add(spool);
+		spool.start();
+
+		return spool;
+	}
+	void removeSpool(SpoolDirectory spool) {
+
+		spools.remove(spool);
+	}
+	/**
+	 * Pushes the file only if the queue has space for it right away, regardless of the admission policy.
+	 */
+	CompletableFuture<RecognitionResultEvent> offerFile(File file, RecognitionResultEventListener eventListener, RecognitionOptions options) throws RecognitionManagerException {
+
+		try {
+			return push(new RecognitionTarget(file.getName(), file, eventListener, options), AdmissionPolicy.REJECT);
+		} catch (InterruptedException e) {
+			throw new RecognitionManagerException(e); // Not thrown, REJECT never waits
+		}
+	}
+	/**
+	 * Pushes the files one by one and aggregates their results. If a file can't be pushed the exception is thrown and the rest of the files isn't pushed.
+	 * Files pushed before it can't be taken back from the queue, they are processed and their results are delivered to the event listener only.
+	 */
+	private CompletableFuture<List<RecognitionResultEvent>> pushBatch(List<File> files, RecognitionResultEventListener eventListener, RecognitionOptions options) throws InterruptedException, RecognitionManagerException {
+
+		ArrayList<CompletableFuture<RecognitionResultEvent>> results = new ArrayList<>(files.size());
+		for (File file : files) {
+			String id = file.getName();
+			// Failed and cancelled targets are represented by the event with the cause, so the batch always completes normally
+			results.add(pushFile(file, eventListener, options).handle((event, cause) -> event != null ? event : new RecognitionResultEvent.RecognitionResultEventBuilder(this, id).setCause(cause).getEvent()));
+		}
+
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()])).thenApply(ignored -> {
+			ArrayList<RecognitionResultEvent> events = new ArrayList<>(results.size());
+			results.forEach(result -> events.add(result.join()));
+			return events;
+		});
+	}
+	private CompletableFuture<RecognitionResultEvent> push(RecognitionTarget target) throws InterruptedException, RecognitionManagerException {
+
+		return push(target, admissionPolicy);
+	}
+	private CompletableFuture<RecognitionResultEvent> push(RecognitionTarget target, AdmissionPolicy admissionPolicy) throws InterruptedException, RecognitionManagerException {
+
+		// Counted before queueing, so draining stop() can't miss the target that is being taken by the stage right away
+		pendingTargets.incrementAndGet();
+		boolean queued = false;
+		try {
+			switch (admissionPolicy) {
+				case REJECT:
+					if (!targets.offer(target)) throw new RecognitionQueueFullException("Recognition queue is full, target " + target.getId() + " was rejected");
+					break;
+				case TIMED_OFFER:
+					if (!targets.offer(target, admissionTimeout, TimeUnit.MILLISECONDS)) throw new RecognitionQueueFullException("Recognition queue is full, target " + target.getId() + " was rejected after " + admissionTimeout + "ms");
+					break;
+				default:
+					targets.put(target);
+			}
+			queued = true;
+
+			RecognitionJournal journal = this.journal;
+			if (journal != null && target.getFile() != null) target.journalEnqueued(journal);
+		} finally {
+			if (queued) target.getResult().whenComplete((event, cause) -> targetCompleted());
+			else targetCompleted();
+		}
+
+		return target.getResult();
+	}
+	private void targetCompleted() {
+
+		if (pendingTargets.decrementAndGet() == 0) {
+			synchronized (drainLock) {
+				drainLock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void start() throws RecognitionManagerException {
+
+		synchronized (lifecycleLock) {
+			startPipeline();
+		}
+	}
+	private synchronized void startPipeline() throws RecognitionManagerException {
+
+		if (isRunning) return;
+		if (!isInitialized) {
+			RecognitionManagerException exception = new RecognitionManagerException("RecognitionManager wasn't initialized");
+			fireSystemException("Can't start RecognitionManager", exception);
+
+			throw exception;
+		}
+
+		cleanWorkingDirectory(); // Clears the "workingImages" folder in the temporary directory
+
+		// Stages are chained in the processing order. First stage takes targets directly from the recognition queue, the rest keep the same priority and deadline order
+		stages.clear();
+		RecognitionStage[] stageTypes = RecognitionStage.values();
+		PipelineStage nextStage = null;
+		for (int i = stageTypes.length - 1; i >= 0; i--) {
+			RecognitionScheduler input = targets;
+			if (i > 0) {
+				input = new RecognitionScheduler();
+				input.setCapacity(stageQueueCapacity);
+				input.setBatchWaitLimit(batchWaitLimit);
+			}
+			nextStage = new PipelineStage(stageTypes[i], input, nextStage);
+			stages.put(stageTypes[i], nextStage);
+		}
+
+		// Speculative passes run on their own threads, so each one gets its own engine. Every extraction thread may wait for all of its passes at once
+		if (speculativeCascadeWidth > 1) {
+			AtomicInteger speculationThreadCounter = new AtomicInteger();
+			speculationExecutor = Executors.newFixedThreadPool(getStageThreadCount(RecognitionStage.EXTRACTION) * speculativeCascadeWidth, runnable -> new Thread(() -> {
+				try {
+					runnable.run();
+				} finally {
+					disposeEngine();
+				}
+			}, "RecognitionManager " + name + " speculation thread " + speculationThreadCounter.getAndIncrement()));
+		}
+
+		if (rasterizationWorkers > 0) {
+			AtomicInteger renderThreadCounter = new AtomicInteger();
+			renderExecutor = Executors.newFixedThreadPool(rasterizationWorkers, runnable -> {
+				Thread thread = new Thread(runnable, "RecognitionManager " + name + " render thread " + renderThreadCounter.getAndIncrement());
+				thread.setPriority(Thread.NORM_PRIORITY - 1); // Prefetching shouldn't slow down the pages that are needed right now
+				return thread;
+			});
+		}
+
+		isRunning = true;
+		// Once stopped threads can't be restarted so new instances are created
+		for (PipelineStage stage : stages.values()) stage.start(getStageThreadCount(stage.type));
+	}
+	@Override
+	public void stop() throws InterruptedException {
+
+		stop(false);
+	}
+	@Override
+	public void stop(boolean drain) throws InterruptedException {
+
+		// Manager's monitor isn't held while waiting for the threads and targets, they may still fire events meanwhile
+		synchronized (lifecycleLock) {
+			if (!isRunning) return;
+
+			stopPipeline(drain);
+		}
+	}
+	private void stopPipeline(boolean drain) throws InterruptedException {
+
+		// Spools stop claiming the new files, claimed ones are either processed or released for the other nodes. Their leases are renewed until then
+		ArrayList<SpoolDirectory> closedSpools = new ArrayList<>(spools);
+		for (SpoolDirectory spool : closedSpools) spool.close();
+
+		if (drain) {
+			// Lazy batches are fed to the end, then pipeline keeps working until every queued target is completed
+			for (Thread feeder : feeders) feeder.join();
+			synchronized (drainLock) {
+				while (pendingTargets.get() > 0) drainLock.wait();
+			}
+		}
+
+		// Settings are checked by the setters, so manager stays initialized and can be started again right away
+		isRunning = false;
+		for (Thread feeder : feeders) {
+			feeder.interrupt();
+			feeder.join();
+		}
+		for (PipelineStage stage : stages.values()) stage.join();
+		if (speculationExecutor != null) {
+			speculationExecutor.shutdownNow();
+			speculationExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			speculationExecutor = null;
+		}
+		if (renderExecutor != null) {
+			renderExecutor.shutdownNow();
+			renderExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			renderExecutor = null;
+		}
+
+		// Notify all remaining targets that recognition was aborted
+		for (PipelineStage stage : stages.values()) {
+			RecognitionTarget target;
+			while ((target = stage.input.poll()) != null) abortTarget(target);
+		}
+		for (SpoolDirectory spool : closedSpools) spool.awaitTermination();
+	}
+
+	/**
+	 * Does recognition with the Tesseract engine of the calling thread.
+	 */
+	public String recognize(File target, Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+
+		BufferedImage image;
+		try {
+			image = ImageIO.read(target);
+		} catch (IOException e) {
+			throw new RecognitionManagerException("Can't read image " + target.getName(), e);
+		}
+
+		return recognize(image, area, recognitionSettings);
+	}
+	/**
+	 * Does recognition with the Tesseract engine of the calling thread.
+	 */
+	public String recognize(BufferedImage target, Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+
+		return getEngine().recognize(target, area, recognitionSettings);
+	}
+
+	/**
+	 * Uploads the image to the Tesseract engine of the calling thread for the repeated recognition of its areas.
+	 * Session can only be used on the calling thread.
+	 */
+	public OCRSession openSession(BufferedImage target) {
+
+		return getEngine().openSession(target);
+	}
+
+	/**
+	 * Processes the target on the specified stage.
+	 *
+	 * @param stage
+	 * @param target
+	 *
+	 * @return false if target doesn't need any further processing.
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	private boolean processStage(RecognitionStage stage, RecognitionTarget target) throws RecognitionManagerException {
+
+		switch (stage) {
+			case RASTERIZATION:
+				currentTargets.add(target);
+				target.startBudget(timeBudget);
+				target.journalStarted();
+
+				ResultCache resultCache = this.resultCache;
+				if (resultCache != null && target.finishFromCache(resultCache)) return false;
+
+				target.extractImages();
+				return true;
+			case DESKEW:
+				target.deskewImages();
+				return true;
+			case CLASSIFICATION:
+				target.prepare();
+
+				// Save copy of image in debug folder
+				File debugOutputDirectory = this.debugOutputDirectory;
+				if (isDebugOutput() && debugOutputDirectory != null) {
+					for (PageImage page : target.getPages()) {
+						try {
+							ImageIO.write(page.getImage(), "png", new File(debugOutputDirectory, FilenameUtils.removeExtension(page.getName()) + ".png"));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+
+				if (target.getDocumentType() == null) {
+					RecognitionResultEvent event = new RecognitionResultEvent.RecognitionResultEventBuilder(this, target.getId()).setBudgetExceeded(target.isBudgetExceeded()).getEvent();
+					target.storeResult(event);
+					target.finish(event);
+					return false;
+				}
+
+				// Rest of the pages will be needed for the extraction
+				if (renderExecutor != null) target.prefetchPages(renderExecutor, rasterizationWorkers);
+				return true;
+			case EXTRACTION:
+				extractData(target, target.getRecognitionSettings());
+				return false;
+			default:
+				return false;
+		}
+	}
+	private void extractData(RecognitionTarget target, RecognitionSettings[] recognitionSettings) throws RecognitionManagerException {
+
+		// Set up debug output file
+		OutputStreamWriter debugWriter = null;
+		File debugOutputDirectory = this.debugOutputDirectory;
+		if (debugOutput && debugOutputDirectory != null) {
+			File debugFile = new File(debugOutputDirectory, target.getId() + ".txt");
+			try {
+				debugWriter = new OutputStreamWriter(new FileOutputStream(debugFile));
+			} catch (IOException e) {
+				fireMiscException("Can't make debug output file: " + debugFile.getAbsolutePath(), e);
+			}
+		}
+
+		try {
+			IDocumentDataBuilder builder;
+			if (speculationExecutor != null && recognitionSettings.length > 1) builder = extractSpeculatively(target, recognitionSettings);
+			else {
+				builder = target.getDocumentType().getBuilder();
+				builder.processImage(target, recognitionSettings);
+			}
+
+			if (debugWriter != null) try {
+				debugWriter.write(target.getId() + '\t' + target.getDocumentType() + '\t' + builder.getCompleteness() + System.lineSeparator());
+				debugWriter.write(builder.getDocumentData().toString(true) + System.lineSeparator());
+				debugWriter.write(builder.getDebugText());
+			} catch (IOException e) {
+				fireMiscException("Can't write to debug file", e);
+			}
+
+			RecognitionResultEvent event = new RecognitionResultEvent.RecognitionResultEventBuilder(this, target.getId()).setDocumentType(target.getDocumentType()).setDocumentData(builder.getDocumentData()).setRecognitionPercentage(builder.getCompleteness()).setBudgetExceeded(target.isBudgetExceeded()).getEvent();
+			target.storeResult(event);
+			target.finish(event);
+		} finally {
+			try {
+				if (debugWriter != null) {
+					debugWriter.close();
+				}
+			} catch (IOException e) {}
+		}
+	}
+	/**
+	 * Runs the first entries of the settings cascade concurrently, each one with its own builder.
+	 * Builders are merged in the cascade order (see IDocumentDataBuilder.continueFrom()), so the fields found by the entries falling short of their passing completeness are kept.
+	 * Cascade stops on the same entry as the sequential one would, passes of the later entries are cancelled.
+	 * If none of them passes - cascade is continued sequentially by the merged builder.
+	 * Cancelled passes are waited for, so the pages aren't released while they are still used.
+	 *
+	 * @param target
+	 * @param recognitionSettings
+	 *
+	 * @return Builder containing the result.
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	private IDocumentDataBuilder extractSpeculatively(RecognitionTarget target, RecognitionSettings[] recognitionSettings) throws RecognitionManagerException {
+
+		int width = Math.min(speculativeCascadeWidth, recognitionSettings.length);
+		List<SpeculativePass> passes = new ArrayList<>(width);
+		for (int i = 0; i < width; i++) {
+			SpeculativePass pass = new SpeculativePass(target, target.getDocumentType().getBuilder(), new RecognitionSettings[]{ recognitionSettings[i] });
+			pass.future = speculationExecutor.submit(pass);
+			passes.add(pass);
+		}
+
+		IDocumentDataBuilder builder = null; // Entries merged so far
+		try {
+			for (int i = 0; i < width; i++) {
+				// Sequential cascade doesn't run the entry if the data found by the earlier ones already passes it
+				if (builder != null && builder.getCompleteness() >= recognitionSettings[i].getPassingCompliteness()) return builder;
+
+				try {
+					passes.get(i).future.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RecognitionManagerException) throw (RecognitionManagerException) e.getCause();
+					throw new RecognitionManagerException(e.getCause());
+				}
+
+				if (builder != null) passes.get(i).builder.continueFrom(builder);
+				builder = passes.get(i).builder;
+			}
+		} catch (InterruptedException e) {
+			throw new RecognitionManagerException("Recognition process was aborted", e);
+		} finally {
+			for (SpeculativePass pass : passes) pass.cancel(); // Engine stops the cancelled pass before its next recognition
+		}
+
+		if (width < recognitionSettings.length && !target.isBudgetExceeded()) builder.processImage(target, Arrays.copyOfRange(recognitionSettings, width, recognitionSettings.length));
+
+		return builder;
+	}
+	private void failTarget(RecognitionTarget target, RecognitionManagerException cause) {
+
+		RecognitionResultEvent event = new RecognitionResultEvent.RecognitionResultEventBuilder(this, target.getId()).setCause(cause).getEvent();
+		target.journalCompleted(event); // Failed target is completed, unlike the aborted one it isn't resumed
+		target.fail(event); // Notify even listener that file recognition failed
+		fireRecognitionException("Failed to recognize file", target.getFile() != null ? target.getFile().getAbsolutePath() : target.getId(), cause);
+		finishTarget(target);
+	}
+	private void abortTarget(RecognitionTarget target) {
+
+		target.fail(new RecognitionResultEvent.RecognitionResultEventBuilder(this, target.getId()).setCause(new RecognitionManagerException("Recognition process was aborted")).getEvent());
+		finishTarget(target);
+	}
+	private void finishTarget(RecognitionTarget target) {
+
+		synchronized (queueWaitStatistics) {
+			queueWaitStatistics.get(target.getOptions().getPriority()).add(target.getQueueWait());
+		}
+
+		target.releasePages();
+		target.cleanWorkingDirectory();
+		currentTargets.remove(target);
+	}
+	private void cleanWorkingDirectory() {
+
+		for (File file : workingImagesDirectory.listFiles()) {
+			FileUtils.deleteQuietly(file);
+		}
+	}
+	/**
+	 * Returns the engine of the calling thread. Engine is created on the first call and keeps its Tesseract handles initialized until the thread finishes.
+	 *
+	 * @return
+	 */
+	private OCREngine getEngine() {
+
+		OCREngine engine = engines.get();
+		// Tessdata path was changed while running, old handles are released before loading the new data
+		if (engine != null && !Objects.equals(engine.getDataPath(), tessDataPath)) {
+			engine.dispose();
+			engine = null;
+		}
+		if (engine == null) {
+			engine = new OCREngine(tessDataPath, LANGUAGE);
+			engines.set(engine);
+		}
+
+		return engine;
+	}
+
+	/**
+	 * Returns the version of the native Tesseract library, it's queried once.
+	 */
+	private static String getTesseractVersion() {
+
+		if (tesseractVersion == null) tesseractVersion = TessAPI.INSTANCE.TessVersion();
+
+		return tesseractVersion;
+	}
+	/**
+	 * Releases native handles of the calling thread's engine.
+	 */
+	private void disposeEngine() {
+
+		OCREngine engine = engines.get();
+		if (engine != null) {
+			engine.dispose();
+			engines.remove();
+		}
+	}
+
+	// Event triggers
+
+	void fireSystemException(String message, Throwable cause) {
+
+		RecognitionManagerEventListener eventListener = this.eventListener;
+		if (eventListener == null) return;
+
+		RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder(this).setMessage(message).setCause(cause).getEvent();
+		synchronized (eventLock) {
+			eventListener.systemExceptionOccurred(event);
+		}
+	}
+	void fireRecognitionException(String message, String file, Throwable cause) {
+
+		RecognitionManagerEventListener eventListener = this.eventListener;
+		if (eventListener == null) return;
+
+		RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder(this).setMessage(message).setFileCause(file).setCause(cause).getEvent();
+		synchronized (eventLock) {
+			eventListener.recognitionExceptionOccurred(event);
+		}
+	}
+	void fireMiscException(String message, Throwable cause) {
+
+		RecognitionManagerEventListener eventListener = this.eventListener;
+		if (eventListener == null) return;
+
+		RecognitionManagerEvent event = new RecognitionManagerEvent.RecognitionManagerEventBuilder(this).setMessage(message).setCause(cause).getEvent();
+		synchronized (eventLock) {
+			eventListener.miscellaneousExceptionOccurred(event);
+		}
+	}
+
+	/**
+	 * Pass of the speculative cascade. Cancelled pass is waited for until it stops, target's pages and rasterizer can be released only then.
+	 */
+	private static class SpeculativePass implements Callable<Void> {
+
+		private final RecognitionTarget target;
+		private final IDocumentDataBuilder builder;
+		private final RecognitionSettings[] settings;
+		private final AtomicBoolean isClaimed = new AtomicBoolean(); // Taken either by the pass starting or by the cancellation before it
+		private final CountDownLatch finished = new CountDownLatch(1);
+		private Future<Void> future = null;
+
+		private SpeculativePass(RecognitionTarget target, IDocumentDataBuilder builder, RecognitionSettings[] settings) {
+
+			this.target = target;
+			this.builder = builder;
+			this.settings = settings;
+		}
+
+		@Override
+		public Void call() throws RecognitionManagerException {
+
+			if (!isClaimed.compareAndSet(false, true)) return null; // Cancelled before it started
+
+			try {
+				builder.processImage(target, settings);
+				return null;
+			} finally {
+				finished.countDown();
+			}
+		}
+		/**
+		 * Cancels the pass and waits until it isn't running anymore. Interrupt of the calling thread is kept for later.
+		 */
+		private void cancel() {
+
+			future.cancel(true);
+			if (isClaimed.compareAndSet(false, true)) return; // Will never run
+
+			boolean interrupted = false;
+			while (finished.getCount() > 0) {
+				try {
+					finished.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	/**
+	 * Group of threads processing one recognition stage. Takes targets from its input queue and puts them into the (bounded) queue of the next stage.
+	 * Every queue serves targets by priority and deadline (see RecognitionScheduler), so the interactive ones don't wait behind the batch at any stage.
+	 */
+	private class PipelineStage {
+
+		private final RecognitionStage type;
+		private final RecognitionScheduler input;
+		private final PipelineStage next;
+		private final ArrayList<Thread> threads = new ArrayList<>();
+
+		private PipelineStage(RecognitionStage type, RecognitionScheduler input, PipelineStage next) {
+
+			this.type = type;
+			this.input = input;
+			this.next = next;
+		}
+
+		private void start(int threadCount) {
+
+			for (int i = 0; i < threadCount; i++) {
+				Thread thread = new Thread(this::run, "RecognitionManager " + name + ' ' + type + " thread " + i);
+				threads.add(thread);
+				thread.start();
+			}
+		}
+		private void join() throws InterruptedException {
+
+			for (Thread thread : threads) thread.join();
+			threads.clear();
+		}
+		private void run() {
+
+			try {
+				// Main loop. Will run until stop() is called
+				while (isRunning) {
+					RecognitionTarget target = null;
+					try {
+						target = input.poll(1000, TimeUnit.MILLISECONDS); // Waits 1s for target to appear then moves to the next iteration
+					} catch (InterruptedException e) {}
+
+					if (target == null) continue;
+					if (target.isCancelled()) {
+						finishTarget(target);
+						continue;
+					}
+
+					boolean passed;
+					try {
+						passed = processStage(type, target);
+					} catch (RecognitionManagerException e) {
+						failTarget(target, e);
+						continue;
+					}
+
+					if (passed && next != null) handOver(target);
+					else finishTarget(target);
+				}
+			} finally {
+				disposeEngine();
+			}
+		}
+		/**
+		 * Puts target in the queue of the next stage. Waits while the queue is full.
+		 */
+		private void handOver(RecognitionTarget target) {
+
+			try {
+				while (!next.input.offer(target, 1000, TimeUnit.MILLISECONDS)) {
+					if (!isRunning) {
+						abortTarget(target);
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				abortTarget(target);
+			}
+		}
+	}
+
+	/**
+	 * Structure type class that encapsulates the file (or the data) to be processed
+	 */
+	public class RecognitionTarget {
+
+		private final String id;
+		private final File file;
+		private ByteBuffer data; // Dropped once the pages are decoded
+		private final String mimeType;
+		private final RecognitionResultEventListener eventListener;
+		private final RecognitionOptions options;
+		private final RecognitionSettings[] recognitionSettings;
+		private final CompletableFuture<RecognitionResultEvent> result = new CompletableFuture<>();
+		private final long sequence;
+		private long enqueueTime = 0;
+		private long queueWait = 0; // Total over all stage queues, in nanoseconds
+		private long budgetDeadline = 0;
+		private volatile boolean budgetExceeded = false;
+		private File workingDirectory = null;
+		private ArrayList<PageImage> pages = new ArrayList<>();
+		private PageRasterizer rasterizer = null;
+		private ResultCache cache = null;
+		private RecognitionJournal journal = null;
+		private String cacheKey = null;
+		private int rotationAngle = 0;
+		private DocumentType documentType = null;
+		private ClassificationPass classificationPass = null;
+		private ClassificationPass fullResolutionPass = null; // Classified page recognized again at the full resolution, shared by the builders
+		private final Object fullResolutionPassLock = new Object();
+
+		public RecognitionTarget(String id, File file, RecognitionResultEventListener eventListener) {
+
+			this(id, file, null, null, eventListener, RecognitionOptions.DEFAULT);
+		}
+		public RecognitionTarget(String id, File file, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+			this(id, file, null, null, eventListener, options);
+		}
+		public RecognitionTarget(String id, byte[] data, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+			this(id, null, ByteBuffer.wrap(data), null, eventListener, options);
+		}
+		/**
+		 * @param id
+		 * @param data          Content of the image or PDF file. Buffer's position and limit aren't changed.
+		 * @param mimeType      MIME type of the content (e.g. "image/png", "application/pdf"). If null - type is detected from the content.
+		 * @param eventListener
+		 * @param options
+		 */
+		public RecognitionTarget(String id, ByteBuffer data, String mimeType, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+			this(id, null, data, mimeType, eventListener, options);
+		}
+		private RecognitionTarget(String id, File file, ByteBuffer data, String mimeType, RecognitionResultEventListener eventListener, RecognitionOptions options) {
+
+			this.id = id;
+			this.file = file;
+			this.data = data != null ? data.duplicate() : null; // Read-only view would hide the backing array and force a copy when decoding
+			this.mimeType = mimeType;
+			this.eventListener = eventListener;
+			this.options = options == null ? RecognitionOptions.DEFAULT : options;
+			this.recognitionSettings = RecognitionManager.this.recognitionSettings; // Target is finished with the settings that were current when it was created
+			this.sequence = targetCounter.incrementAndGet();
+
+			// Cancelled target is removed from the queue right away. If it's already being processed it will be dropped before the next stage
+			result.whenComplete((event, cause) -> {
+				if (result.isCancelled()) targets.remove(this);
+			});
+		}
+
+		public String getId() {
+
+			return id;
+		}
+		/**
+		 * Returns the file to be processed or null if target was pushed as a stream.
+		 *
+		 * @return
+		 */
+		public File getFile() {
+
+			return file;
+		}
+		public RecognitionResultEventListener getEventListener() {
+
+			return eventListener;
+		}
+		/**
+		 * Returns the manager processing the target. Builders should use it for the recognition and debug output.
+		 *
+		 * @return
+		 */
+		public RecognitionManager getRecognitionManager() {
+
+			return RecognitionManager.this;
+		}
+		public RecognitionSettings[] getRecognitionSettings() {
+
+			return recognitionSettings;
+		}
+		/**
+		 * Returns the future which completes with the recognition result. Completes exceptionally if recognition failed.
+		 * Cancelling it cancels the recognition of the target.
+		 *
+		 * @return
+		 */
+		public CompletableFuture<RecognitionResultEvent> getResult() {
+
+			return result;
+		}
+		public boolean isCancelled() {
+
+			return result.isCancelled();
+		}
+		public RecognitionOptions getOptions() {
+
+			return options;
+		}
+		/**
+		 * Returns the number of the target in the order of pushing.
+		 *
+		 * @return
+		 */
+		public long getSequence() {
+
+			return sequence;
+		}
+		long getEnqueueTime() {
+
+			return enqueueTime;
+		}
+		void setEnqueueTime(long enqueueTime) {
+
+			this.enqueueTime = enqueueTime;
+		}
+		long getQueueWait() {
+
+			return queueWait;
+		}
+		void addQueueWait(long wait) {
+
+			queueWait += wait;
+		}
+		/**
+		 * Starts counting the processing time of the target.
+		 *
+		 * @param defaultBudget Budget used if options of the target don't specify one. 0 - unlimited.
+		 */
+		void startBudget(long defaultBudget) {
+
+			long budget = options.getTimeBudget() > 0 ? options.getTimeBudget() : defaultBudget;
+			budgetDeadline = budget > 0 ? System.currentTimeMillis() + budget : 0;
+		}
+		/**
+		 * Checks if the time budget of the target ran out. Should be checked at the safe points of the processing, where it can be stopped keeping the data found so far.
+		 *
+		 * @return
+		 */
+		public boolean isBudgetExceeded() {
+
+			if (!budgetExceeded && budgetDeadline != 0 && System.currentTimeMillis() > budgetDeadline) budgetExceeded = true;
+
+			return budgetExceeded;
+		}
+		/**
+		 * Returns the decoded pages of the target.
+		 *
+		 * @return
+		 */
+		public ArrayList<PageImage> getPages() {
+
+			return new ArrayList<>(pages);
+		}
+		public int getRotationAngle() {
+
+			return rotationAngle;
+		}
+		public DocumentType getDocumentType() {
+
+			return documentType;
+		}
+		/**
+		 * Returns the OCR pass that determined the document type.
+		 *
+		 * @return Pass or null if type wasn't determined.
+		 */
+		public ClassificationPass getClassificationPass() {
+
+			return classificationPass;
+		}
+		/**
+		 * Returns the OCR pass of the classified page at the full resolution, for the builders to use instead of recognizing that page themselves.
+		 * If the page was classified on its preview it's recognized at the full resolution with the settings once, and the result is shared by all builders of the target.
+		 * Text layer isn't returned, its coordinates aren't on the rotated and deskewed page.
+		 *
+		 * @param recognitionSettings Settings the builder would recognize the page with.
+		 *
+		 * @return Pass or null if the type wasn't determined by OCR or the settings don't match the classification pass (see ClassificationPass.matches()).
+		 *
+		 * @throws RecognitionManagerException
+		 */
+		public ClassificationPass getFullResolutionPass(RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+
+			if (classificationPass == null || classificationPass.isTextLayer() || !classificationPass.matches(recognitionSettings)) return null;
+			if (classificationPass.getScale() == 1f) return classificationPass;
+
+			synchronized (fullResolutionPassLock) {
+				if (fullResolutionPass == null) {
+					int pageIndex = classificationPass.getPageIndex();
+					Document hOCRText = Jsoup.parse(recognize(pages.get(pageIndex).getImage(), null, recognitionSettings)); // Page is already rotated by the found angle
+					fullResolutionPass = new ClassificationPass(pageIndex, classificationPass.getRotationAngle(), 1f, recognitionSettings, hOCRText);
+				}
+
+				return fullResolutionPass;
 			}
+		}
+		/**
+		 * Returns the folder inside the "workingImages" which holds temporary files (e.g. spilled pages) of this target only.
+		 *
+		 * @return Folder or null if target's processing hasn't started yet.
+		 */
+		public File getWorkingDirectory() {
+
+			return workingDirectory;
+		}
+
+		/**
+		 * Determines document type and orientation of the extracted images. Then rotates all of them to the correct orientation
+		 *
+		 * @throws RecognitionManagerException
+		 */
+		protected void prepare() throws RecognitionManagerException {
 
 			int currentAngle = 0;
 
 			int i = 0;
-			while (i < images.size() && documentType == null) { // Check all files until docType is determined
-				currentAngle = -90;
-				BufferedImage image;
-
-				try {
-					image = ImageIO.read(images.get(i));
-				} catch (IOException e) {
-					throw makeException("Error reading tmp file " + images.get(i).getName(), e);
+			while (i < pages.size() && documentType == null && !isBudgetExceeded()) { // Check all pages until docType is determined
+				// Text layer of the digitally generated PDF is used instead of OCR. Page is recognized anyway if the text isn't enough to determine the type
+				Document textLayer = pages.get(i).getTextLayer();
+				if (textLayer != null) {
+					documentType = checkDocumentType(textLayer);
+					if (documentType != null) {
+						currentAngle = 0;
+						classificationPass = new ClassificationPass(i, 0, 1f, null, textLayer);
+						break;
+					}
 				}
 
-				while (currentAngle < 270 && documentType == null) { // Rotate image CW 90 until docType is determined
-					currentAngle += 90;
-					image = ImageHelper.rotate(image, currentAngle);
+				BufferedImage image = pages.get(i).getPreview(); // Orientation and type don't need the full resolution
+
+				// Orientation specified by the document is used as is. Otherwise it's estimated without OCR, every angle is tried only when the estimate isn't reliable
+				OrientationEstimator.Estimate estimate = pages.get(i).isOrientationKnown() ? null : OrientationEstimator.estimate(image);
+				if (estimate == null || estimate.isConfident(orientationConfidence)) {
+					currentAngle = estimate == null ? 0 : estimate.getAngle(); // Page with the known orientation was turned upright while decoding
+
+					// Typical layouts are classified without OCR, the rest is recognized
+					if (layoutClassification) documentType = LayoutClassifier.classify(image);
+					if (documentType == null) documentType = classifyPage(i, image, currentAngle);
+				} else {
+					currentAngle = -90;
+					while (currentAngle < 270 && documentType == null && !isBudgetExceeded()) { // Rotate image CW 90 until docType is determined
+						currentAngle += 90;
 
-					documentType = checkDocumentType(image);
+						documentType = classifyPage(i, image, currentAngle);
+					}
 				}
+
+				i++;
 			}
 
 			if (documentType != null && currentAngle != 0) {
@@ -509,50 +1595,232 @@ public class RecognitionManager implements IRecognitionManager {
 			}
 		}
 
-		private void extractImages() throws IOException {
+		/**
+		 * Prepares pages of the file and renders the preview of the first page, the classification starts with it. Other pages are rendered when first used.
+		 * Working directory of the target is used only for the spilled pages.
+		 *
+		 * @throws RecognitionManagerException
+		 */
+		protected void extractImages() throws RecognitionManagerException {
+
+			// Resolved only now, target may have been pushed before the temporary directory was configured
+			File workingImagesDirectory = RecognitionManager.this.workingImagesDirectory;
+			if (workingImagesDirectory == null) throw makeException("Working images directory isn't set, RecognitionManager wasn't initialized", null);
+			workingDirectory = new File(workingImagesDirectory, String.valueOf(sequence));
+			workingDirectory.mkdir();
+
+			String name = file != null ? file.getName() : FilenameUtils.getName(id);
+			try {
+				if (file != null ? Helper.isPdf(file) : Helper.isPdf(data, mimeType)) {
+					rasterizer = file != null ? new PdfPageRasterizer(file, rasterizationDpi) : new PdfPageRasterizer(Helper.toByteArray(data), rasterizationDpi);
+					for (int i = 0; i < rasterizer.getPageCount(); i++) {
+						pages.add(new PageImage(pageStore, FilenameUtils.removeExtension(name) + '_' + i + ".png", new File(workingDirectory, "page_" + i + ".png"), rasterizer, i, classificationScale));
+					}
+				} else {
+					rasterizer = file != null ? new ImagePageRasterizer(file) : new ImagePageRasterizer(data, mimeType);
+					pages.add(new PageImage(pageStore, name, new File(workingDirectory, "page_0.png"), rasterizer, 0, classificationScale));
+				}
+			} catch (IOException e) {
+				throw makeException("Error extracting images", e);
+			}
+			data = null;
+
+			// Decoding stays on the rasterization threads instead of delaying the OCR. Page classified by its text layer doesn't need the raster
+			if (!pages.isEmpty() && pages.get(0).getTextLayer() == null) pages.get(0).getPreview();
+		}
+		/**
+		 * Renders the pages which weren't used yet in the background, splitting them in the contiguous ranges between the workers.
+		 *
+		 * @param executor
+		 * @param workers
+		 */
+		private void prefetchPages(ExecutorService executor, int workers) {
 
-			images = Helper.imagesFromFile(file);
-			for (File page : images) {
-				BufferedImage image = ImageIO.read(page);
-				image = ImageHelper.deskewImage(image);
-				ImageIO.write(image, "png", new File(FilenameUtils.removeExtension(page.getAbsolutePath()).concat(".png")));
+			ArrayList<PageImage> pending = new ArrayList<>();
+			for (PageImage page : pages) {
+				if (!page.isRendered()) pending.add(page);
+			}
+			if (pending.isEmpty()) return;
+
+			int rangeSize = (pending.size() + workers - 1) / workers;
+			for (int from = 0; from < pending.size(); from += rangeSize) {
+				List<PageImage> range = pending.subList(from, Math.min(from + rangeSize, pending.size()));
+				executor.execute(() -> {
+					for (PageImage page : range) {
+						if (isCancelled()) return;
+						page.prefetch();
+					}
+				});
 			}
 		}
-		private DocumentType checkDocumentType(BufferedImage image) throws RecognitionManagerException {
+		/**
+		 * Deskews all extracted pages. Preview of the first page is deskewed right away, pages which aren't rendered yet are deskewed once they are.
+		 * Skew angle is measured on the first rendition of the page and reused for the others, so the preview and the full raster stay aligned.
+		 *
+		 * @throws RecognitionManagerException
+		 */
+		protected void deskewImages() throws RecognitionManagerException {
 
-			DocumentType docType = null;
-			Document hOCRText = null;
-			float bestMatch = 0f;
+			for (PageImage page : pages) page.transform(ImageHelper.deskewing());
+		}
+		/**
+		 * Recognizes the rotated page and determines its type. Pass that determined the type is kept for the builders.
+		 *
+		 * @param pageIndex
+		 * @param image
+		 * @param angle
+		 *
+		 * @return
+		 *
+		 * @throws RecognitionManagerException
+		 */
+		private DocumentType classifyPage(int pageIndex, BufferedImage image, int angle) throws RecognitionManagerException {
 
 			// Do (fast) recognition with the very basic settings to get all of the text on the image
+			Document hOCRText;
 			try {
-				hOCRText = Jsoup.parse(recognize(image, null, new RecognitionSettings(0, RecognitionSettings.ENGINE_MODE_BASIC, RecognitionSettings.PAGESEG_MODE_SINGLE_BLOCK)));
+				hOCRText = Jsoup.parse(recognize(ImageHelper.rotate(image, angle), null, CLASSIFICATION_SETTINGS)); // Always rotated from the original image
 			} catch (RecognitionManagerException e) {
 				throw makeException(e.getMessage(), e.getCause()); // Repack exception for standardized look
 			}
 
-			for (DocumentType type : DocumentType.values()) {
-				// Get the chance that recognized text belongs to the document of this type
-				float match = type.matchText(Helper.getProperTextFromJSoupDoc(hOCRText));
+			DocumentType type = checkDocumentType(hOCRText);
+			if (type != null) classificationPass = new ClassificationPass(pageIndex, angle, pages.get(pageIndex).getPreviewScale(), CLASSIFICATION_SETTINGS, hOCRText);
 
-				if (match > bestMatch) {
-					docType = type;
-					bestMatch = match;
-				}
-			}
+			return type;
+		}
+		private DocumentType checkDocumentType(Document hOCRText) {
 
-			return docType;
+			// All types are matched in a single scan of the text
+			return DocumentClassifier.getInstance().classify(Helper.getProperTextFromJSoupDoc(hOCRText));
 		}
 		private void rotateImages() throws RecognitionManagerException {
 
-			for (File image : images) {
-				try {
-					Helper.rotateImageFile(image, rotationAngle);
-				} catch (IOException e) {
-					throw makeException("Error rotating tmp file \" + image.getName()", e);
+			int angle = rotationAngle;
+			for (PageImage page : pages) page.transform(image -> ImageHelper.rotate(image, angle));
+		}
+		private void releasePages() {
+
+			for (PageImage page : pages) page.release();
+			if (rasterizer != null) rasterizer.close();
+		}
+
+		private void cleanWorkingDirectory() {
+
+			if (workingDirectory != null) FileUtils.deleteQuietly(workingDirectory);
+		}
+		/**
+		 * Finishes the target with the cached result if there is one.
+		 *
+		 * @param cache
+		 *
+		 * @return true if target was finished.
+		 */
+		private boolean finishFromCache(ResultCache cache) {
+
+			try {
+				cacheKey = getCacheKey();
+			} catch (IOException e) {
+				return false; // Content can't be read, error is reported by the rasterization
+			}
+			this.cache = cache;
+
+			ResultCache.CachedResult cached = cache.get(cacheKey);
+			if (cached == null) return false;
+
+			finish(new RecognitionResultEvent.RecognitionResultEventBuilder(RecognitionManager.this, id).setDocumentType(cached.getDocumentType()).setDocumentData(cached.getDocumentData()).setRecognitionPercentage(cached.getRecognitionPercentage()).getEvent());
+			return true;
+		}
+		/**
+		 * Stores the result in the cache the target was looked up in. Partial results of the targets that ran out of time aren't stored.
+		 *
+		 * @param event
+		 */
+		private void storeResult(RecognitionResultEvent event) {
+
+			if (cache == null || event.isBudgetExceeded()) return;
+
+			try {
+				cache.put(cacheKey, new ResultCache.CachedResult(event.getDocumentType(), event.getDocumentData(), event.getRecognitionPercentage()));
+			} catch (IOException e) {
+				fireMiscException("Can't store result of " + id + " in the cache", e);
+			}
+		}
+		/**
+		 * Hashes the content of the target together with everything that affects the result of its recognition.
+		 *
+		 * @return
+		 *
+		 * @throws IOException
+		 */
+		private String getCacheKey() throws IOException {
+
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e); // Required to be present on every Java platform
+			}
+
+			if (file != null) {
+				try (InputStream stream = new FileInputStream(file)) {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while ((read = stream.read(buffer)) > 0) digest.update(buffer, 0, read);
 				}
+			} else digest.update(data.duplicate());
+			digest.update((Arrays.toString(recognitionSettings) + '|' + rasterizationDpi + '|' + classificationScale + '|' + layoutClassification + '|' + orientationConfidence + '|' + LANGUAGE + '|' + getTesseractVersion()).getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+			return key.toString();
+		}
+		private void journalEnqueued(RecognitionJournal journal) {
+
+			this.journal = journal;
+			try {
+				journal.enqueued(file, id);
+			} catch (IOException e) {
+				fireMiscException("Can't write to the journal", e);
+			}
+		}
+		private void journalStarted() {
+
+			if (journal == null) return;
+
+			try {
+				journal.started(file);
+			} catch (IOException e) {
+				fireMiscException("Can't write to the journal", e);
+			}
+		}
+		private void journalCompleted(RecognitionResultEvent event) {
+
+			if (journal == null) return;
+
+			try {
+				journal.completed(file, event);
+			} catch (IOException e) {
+				fireMiscException("Can't write to the journal", e);
 			}
 		}
+		private void finish(RecognitionResultEvent event) {
+
+			if (isCancelled()) return;
+
+			journalCompleted(event);
+
+			if (eventListener != null) eventListener.recognitionFinished(event);
+			result.complete(event);
+		}
+		private void fail(RecognitionResultEvent event) {
+
+			if (isCancelled()) return;
+
+			if (eventListener != null) eventListener.recognitionError(event);
+			result.completeExceptionally(event.getCause());
+		}
 
 		private RecognitionManagerException makeException(String message, Throwable cause) {
 
@@ -0,0 +1,106 @@
+package net.nekoinemo.documentrecognition;
+
+/**
+ * Per target options of the recognition process.
+ */
+public class RecognitionOptions {
+
+	public static final RecognitionOptions DEFAULT = new RecognitionOptions();
+
+	private RecognitionPriority priority = RecognitionPriority.BATCH;
+	private long deadline = 0;
+	private long timeBudget = 0;
+
+	private RecognitionOptions() {}
+
+	public RecognitionPriority getPriority() {
+
+		return priority;
+	}
+	/**
+	 * Returns the time (in milliseconds, see System.currentTimeMillis()) until which target should be processed.
+	 *
+	 * @return Deadline or 0 if target has no deadline.
+	 */
+	public long getDeadline() {
+
+		return deadline;
+	}
+	/**
+	 * Returns the maximum processing time of the target.
+	 *
+	 * @return Time in milliseconds or 0 if RecognitionManager's default should be used.
+	 */
+	public long getTimeBudget() {
+
+		return timeBudget;
+	}
+
+	@Override
+	public String toString() {
+
+		return "RecognitionOptions{" +
+				"priority=" + priority +
+				", deadline=" + deadline +
+				", timeBudget=" + timeBudget +
+				'}';
+	}
+
+	public static class RecognitionOptionsBuilder {
+
+		private RecognitionOptions options;
+
+		public RecognitionOptionsBuilder() {
+
+			options = new RecognitionOptions();
+		}
+
+		public RecognitionOptions getOptions() {
+
+			return options;
+		}
+
+		public RecognitionOptionsBuilder setPriority(RecognitionPriority priority) {
+
+			options.priority = priority;
+			return this;
+		}
+		/**
+		 * Targets with the earlier deadline are served first within the same priority class.
+		 *
+		 * @param deadline Time in milliseconds (see System.currentTimeMillis()) or 0 if target has no deadline.
+		 *
+		 * @return
+		 */
+		public RecognitionOptionsBuilder setDeadline(long deadline) {
+
+			options.deadline = deadline;
+			return this;
+		}
+		/**
+		 * Sets the deadline relative to the current time.
+		 *
+		 * @param timeout Time in milliseconds.
+		 *
+		 * @return
+		 */
+		public RecognitionOptionsBuilder setTimeout(long timeout) {
+
+			options.deadline = System.currentTimeMillis() + timeout;
+			return this;
+		}
+		/**
+		 * Limits the processing time of the target. Time spent in the queue isn't counted.
+		 * When the time runs out processing stops at the next safe point and result contains the data found so far.
+		 *
+		 * @param timeBudget Time in milliseconds or 0 if RecognitionManager's default should be used.
+		 *
+		 * @return
+		 */
+		public RecognitionOptionsBuilder setTimeBudget(long timeBudget) {
+
+			options.timeBudget = timeBudget;
+			return this;
+		}
+	}
+}
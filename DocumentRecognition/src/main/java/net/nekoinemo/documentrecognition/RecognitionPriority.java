@@ -0,0 +1,16 @@
+package net.nekoinemo.documentrecognition;
+
+/**
+ * Priority class of the recognition target.
+ */
+public enum RecognitionPriority {
+
+	/**
+	 * Target is served before any batch target (express lane), e.g. a single upload someone waits for.
+	 */
+	INTERACTIVE,
+	/**
+	 * Background processing of the large amounts of files. Default priority.
+	 */
+	BATCH
+}
@@ -0,0 +1,12 @@
+package net.nekoinemo.documentrecognition;
+
+/**
+ * Thrown when target can't be pushed because the recognition queue is full.
+ */
+public class RecognitionQueueFullException extends RecognitionManagerException {
+
+	public RecognitionQueueFullException(String message) {
+
+		super(message);
+	}
+}
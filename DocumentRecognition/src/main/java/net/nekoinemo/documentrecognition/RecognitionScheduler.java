@@ -0,0 +1,369 @@
+package net.nekoinemo.documentrecognition;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded recognition queue that serves targets earliest-deadline-first, interactive targets before the batch ones. Used between all stages of the pipeline.
+ * Batch targets are protected from starvation: one is served after every EXPRESS_BURST interactive targets in a row, or right away if it waits longer than the batch wait limit.
+ */
+public class RecognitionScheduler extends AbstractQueue<RecognitionManager.RecognitionTarget> implements BlockingQueue<RecognitionManager.RecognitionTarget> {
+
+	private static final int EXPRESS_BURST = 8;
+	// Targets without deadline go after the ones with it, in the order they were pushed
+	private static final Comparator<RecognitionManager.RecognitionTarget> EDF_ORDER = Comparator.comparingLong((RecognitionManager.RecognitionTarget target) -> target.getOptions().getDeadline() == 0 ? Long.MAX_VALUE : target.getOptions().getDeadline()).thenComparingLong(RecognitionManager.RecognitionTarget::getSequence);
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final EnumMap<RecognitionPriority, PriorityQueue<RecognitionManager.RecognitionTarget>> lanes = new EnumMap<>(RecognitionPriority.class);
+	private final EnumMap<RecognitionPriority, QueueWaitStatistics> statistics = new EnumMap<>(RecognitionPriority.class);
+	private long batchWaitLimit = 60000;
+	private int capacity = Integer.MAX_VALUE;
+	private int size = 0;
+	private int expressInRow = 0;
+
+	public RecognitionScheduler() {
+
+		for (RecognitionPriority priority : RecognitionPriority.values()) {
+			lanes.put(priority, new PriorityQueue<>(EDF_ORDER));
+			statistics.put(priority, new QueueWaitStatistics());
+		}
+	}
+
+	/**
+	 * Sets the time after which the waiting batch target is served before the interactive ones.
+	 *
+	 * @param batchWaitLimit Time in milliseconds.
+	 */
+	public void setBatchWaitLimit(long batchWaitLimit) {
+
+		this.batchWaitLimit = batchWaitLimit;
+	}
+	public int getCapacity() {
+
+		return capacity;
+	}
+	/**
+	 * Sets the maximum number of queued targets. Targets that are already queued stay in the queue even if there are more of them.
+	 *
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+
+		lock.lock();
+		try {
+			this.capacity = capacity;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Returns the statistics of the time targets of the priority class spent in this queue.
+	 *
+	 * @param priority
+	 *
+	 * @return Snapshot of the statistics.
+	 */
+	public QueueWaitStatistics getQueueWaitStatistics(RecognitionPriority priority) {
+
+		lock.lock();
+		try {
+			return statistics.get(priority).copy();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(RecognitionManager.RecognitionTarget target) {
+
+		lock.lock();
+		try {
+			if (size >= capacity) return false;
+
+			enqueue(target);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public void put(RecognitionManager.RecognitionTarget target) throws InterruptedException {
+
+		lock.lockInterruptibly();
+		try {
+			while (size >= capacity) notFull.await();
+			enqueue(target);
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public boolean offer(RecognitionManager.RecognitionTarget target, long timeout, TimeUnit unit) throws InterruptedException {
+
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (size >= capacity) {
+				if (nanos <= 0) return false;
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(target);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public RecognitionManager.RecognitionTarget poll() {
+
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public RecognitionManager.RecognitionTarget take() throws InterruptedException {
+
+		lock.lockInterruptibly();
+		try {
+			RecognitionManager.RecognitionTarget target;
+			while ((target = dequeue()) == null) notEmpty.await();
+			return target;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public RecognitionManager.RecognitionTarget poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			RecognitionManager.RecognitionTarget target;
+			while ((target = dequeue()) == null) {
+				if (nanos <= 0) return null;
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return target;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public RecognitionManager.RecognitionTarget peek() {
+
+		lock.lock();
+		try {
+			PriorityQueue<RecognitionManager.RecognitionTarget> lane = selectLane();
+			return lane == null ? null : lane.peek();
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public boolean remove(Object o) {
+
+		lock.lock();
+		try {
+			for (PriorityQueue<RecognitionManager.RecognitionTarget> lane : lanes.values()) {
+				if (lane.remove(o)) {
+					size--;
+					notFull.signal();
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public int size() {
+
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public int remainingCapacity() {
+
+		lock.lock();
+		try {
+			return Math.max(0, capacity - size);
+		} finally {
+			lock.unlock();
+		}
+	}
+	@Override
+	public int drainTo(Collection<? super RecognitionManager.RecognitionTarget> c) {
+
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	@Override
+	public int drainTo(Collection<? super RecognitionManager.RecognitionTarget> c, int maxElements) {
+
+		lock.lock();
+		try {
+			int count = 0;
+			RecognitionManager.RecognitionTarget target;
+			while (count < maxElements && (target = dequeue()) != null) {
+				c.add(target);
+				count++;
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * Iterates over the snapshot of the queue in no particular order.
+	 *
+	 * @return
+	 */
+	@Override
+	public Iterator<RecognitionManager.RecognitionTarget> iterator() {
+
+		ArrayList<RecognitionManager.RecognitionTarget> snapshot = new ArrayList<>();
+		lock.lock();
+		try {
+			for (PriorityQueue<RecognitionManager.RecognitionTarget> lane : lanes.values()) snapshot.addAll(lane);
+		} finally {
+			lock.unlock();
+		}
+
+		Iterator<RecognitionManager.RecognitionTarget> iterator = snapshot.iterator();
+		return new Iterator<RecognitionManager.RecognitionTarget>() {
+
+			private RecognitionManager.RecognitionTarget current = null;
+
+			@Override
+			public boolean hasNext() {
+
+				return iterator.hasNext();
+			}
+			@Override
+			public RecognitionManager.RecognitionTarget next() {
+
+				return current = iterator.next();
+			}
+			@Override
+			public void remove() {
+
+				RecognitionScheduler.this.remove(current);
+			}
+		};
+	}
+
+	private PriorityQueue<RecognitionManager.RecognitionTarget> selectLane() {
+
+		PriorityQueue<RecognitionManager.RecognitionTarget> express = lanes.get(RecognitionPriority.INTERACTIVE);
+		PriorityQueue<RecognitionManager.RecognitionTarget> batch = lanes.get(RecognitionPriority.BATCH);
+
+		if (batch.isEmpty()) return express.isEmpty() ? null : express;
+		if (express.isEmpty()) return batch;
+
+		// Starvation protection
+		boolean batchStarving = expressInRow >= EXPRESS_BURST || System.nanoTime() - batch.peek().getEnqueueTime() > TimeUnit.MILLISECONDS.toNanos(batchWaitLimit);
+		return batchStarving ? batch : express;
+	}
+	private void enqueue(RecognitionManager.RecognitionTarget target) {
+
+		target.setEnqueueTime(System.nanoTime());
+		lanes.get(target.getOptions().getPriority()).add(target);
+		size++;
+		notEmpty.signal();
+	}
+	private RecognitionManager.RecognitionTarget dequeue() {
+
+		PriorityQueue<RecognitionManager.RecognitionTarget> lane = selectLane();
+		if (lane == null) return null;
+
+		RecognitionManager.RecognitionTarget target = lane.poll();
+		size--;
+		notFull.signal();
+		RecognitionPriority priority = target.getOptions().getPriority();
+
+		expressInRow = priority == RecognitionPriority.INTERACTIVE ? expressInRow + 1 : 0;
+		long wait = System.nanoTime() - target.getEnqueueTime();
+		statistics.get(priority).add(wait);
+		target.addQueueWait(wait);
+
+		return target;
+	}
+
+	/**
+	 * Statistics of the time targets spent in the recognition queues.
+	 */
+	public static class QueueWaitStatistics {
+
+		private long count = 0;
+		private long totalWait = 0;
+		private long maxWait = 0;
+
+		QueueWaitStatistics() {}
+
+		/**
+		 * Returns the number of targets taken from the queue.
+		 *
+		 * @return
+		 */
+		public long getCount() {
+
+			return count;
+		}
+		/**
+		 * Returns the average wait time in milliseconds.
+		 *
+		 * @return
+		 */
+		public double getAverageWait() {
+
+			return count == 0 ? 0 : (double) totalWait / count / 1000000d;
+		}
+		/**
+		 * Returns the longest wait time in milliseconds.
+		 *
+		 * @return
+		 */
+		public double getMaxWait() {
+
+			return maxWait / 1000000d;
+		}
+
+		void add(long wait) {
+
+			count++;
+			totalWait += wait;
+			if (wait > maxWait) maxWait = wait;
+		}
+		QueueWaitStatistics copy() {
+
+			QueueWaitStatistics copy = new QueueWaitStatistics();
+			copy.count = count;
+			copy.totalWait = totalWait;
+			copy.maxWait = maxWait;
+			return copy;
+		}
+
+		@Override
+		public String toString() {
+
+			return "QueueWaitStatistics{" +
+					"count=" + count +
+					", averageWait=" + getAverageWait() +
+					", maxWait=" + getMaxWait() +
+					'}';
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package net.nekoinemo.documentrecognition;
+
+/**
+ * Stages of the recognition pipeline in the processing order. Every stage runs on its own threads and takes targets from its own queue.
+ */
+public enum RecognitionStage {
+
+	/**
+	 * Opening of the file and rendering of the first page preview (PDF rasterization). Other pages are rendered on demand.
+	 */
+	RASTERIZATION,
+	/**
+	 * Deskewing of the extracted pages, the first page preview is deskewed right away.
+	 */
+	DESKEW,
+	/**
+	 * Orientation search and determination of the document type.
+	 */
+	CLASSIFICATION,
+	/**
+	 * Recognition of the document fields by the builder of the document type.
+	 */
+	EXTRACTION
+}
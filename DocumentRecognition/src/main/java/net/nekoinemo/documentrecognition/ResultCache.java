@@ -0,0 +1,240 @@
+package net.nekoinemo.documentrecognition;
+
+import net.nekoinemo.documentrecognition.document.DocumentType;
+import net.nekoinemo.documentrecognition.document.IDocumentData;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of the recognition results. Entries are stored in the directory as "<key>.result" files, where key is the hash of the target content
+ * together with the recognition settings and the Tesseract version, so the same file pushed again is finished without rasterization and OCR.
+ * When the total size of the entries exceeds the limit the oldest ones are removed, entries older than the time to live are treated as missing.
+ */
+public class ResultCache {
+
+	public static final String ENTRY_SUFFIX = ".result";
+
+	private final File directory;
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(); // Key -> size of the entry file, oldest first
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	private long size = 0;
+	private long maxSize = 256 * 1024 * 1024;
+	private long timeToLive = 30L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * Opens the cache in the directory. Entries left by the previous runs are reused.
+	 *
+	 * @param directory
+	 *
+	 * @throws RecognitionManagerException if directory can't be created or listed.
+	 */
+	public ResultCache(File directory) throws RecognitionManagerException {
+
+		this.directory = directory;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new RecognitionManagerException("Can't create result cache directory " + directory.getAbsolutePath());
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+		if (files == null) throw new RecognitionManagerException("Can't list result cache directory " + directory.getAbsolutePath());
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			entries.put(file.getName().substring(0, file.getName().length() - ENTRY_SUFFIX.length()), file.length());
+			size += file.length();
+		}
+		evict();
+	}
+
+	public File getDirectory() {
+
+		return directory;
+	}
+	/**
+	 * Sets the maximum total size of the entries. Default is 256 MB.
+	 *
+	 * @param maxSize Size in bytes.
+	 */
+	public void setMaxSize(long maxSize) {
+
+		synchronized (this) {
+			this.maxSize = maxSize;
+		}
+
+		evict();
+	}
+	/**
+	 * Sets the time after which the entry is discarded. Default is 30 days.
+	 *
+	 * @param timeToLive Time in milliseconds or 0 if entries shouldn't expire.
+	 */
+	public synchronized void setTimeToLive(long timeToLive) {
+
+		this.timeToLive = timeToLive;
+	}
+	public long getHitCount() {
+
+		return hitCount.get();
+	}
+	public long getMissCount() {
+
+		return missCount.get();
+	}
+	public synchronized int getEntryCount() {
+
+		return entries.size();
+	}
+	/**
+	 * Returns the total size of the entries.
+	 *
+	 * @return Size in bytes.
+	 */
+	public synchronized long getSize() {
+
+		return size;
+	}
+	/**
+	 * Removes all entries. Hit and miss counters are kept.
+	 */
+	public synchronized void clear() {
+
+		for (String key : entries.keySet()) getFile(key).delete();
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the stored result.
+	 *
+	 * @param key
+	 *
+	 * @return Result or null if there is no such entry or it has expired.
+	 */
+	CachedResult get(String key) {
+
+		File file = getFile(key);
+		long timeToLive;
+		synchronized (this) {
+			timeToLive = this.timeToLive;
+			if (!entries.containsKey(key)) {
+				missCount.incrementAndGet();
+				return null;
+			}
+		}
+
+		if (timeToLive > 0 && System.currentTimeMillis() - file.lastModified() > timeToLive) {
+			remove(key);
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		try (ObjectInputStream stream = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			CachedResult result = (CachedResult) stream.readObject();
+			hitCount.incrementAndGet();
+
+			return result;
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			// Entry is damaged or was written by the incompatible version of the data classes
+			remove(key);
+			missCount.incrementAndGet();
+			return null;
+		}
+	}
+	/**
+	 * Stores the result, replacing the existing entry.
+	 *
+	 * @param key
+	 * @param result
+	 *
+	 * @throws IOException
+	 */
+	void put(String key, CachedResult result) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+			stream.writeObject(result);
+		}
+
+		// Written under a temporary name first, so a concurrent get() never reads a partial entry
+		File file = getFile(key);
+		Path temporary = file.toPath().resolveSibling(file.getName() + '.' + Thread.currentThread().getId() + ".tmp");
+		Files.write(temporary, bytes.toByteArray());
+		Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		synchronized (this) {
+			Long previousSize = entries.remove(key); // Reinserted as the newest
+			if (previousSize != null) size -= previousSize;
+			entries.put(key, (long) bytes.size());
+			size += bytes.size();
+		}
+
+		evict();
+	}
+
+	private synchronized void remove(String key) {
+
+		Long previousSize = entries.remove(key);
+		if (previousSize != null) size -= previousSize;
+		getFile(key).delete();
+	}
+	/**
+	 * Removes the oldest entries until the size fits the limit.
+	 */
+	private synchronized void evict() {
+
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+
+			size -= entry.getValue();
+			getFile(entry.getKey()).delete();
+			iterator.remove();
+		}
+	}
+	private File getFile(String key) {
+
+		return new File(directory, key + ENTRY_SUFFIX);
+	}
+
+	/**
+	 * Stored result of the recognition.
+	 */
+	public static class CachedResult implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DocumentType documentType;
+		private final IDocumentData documentData;
+		private final int recognitionPercentage;
+
+		CachedResult(DocumentType documentType, IDocumentData documentData, int recognitionPercentage) {
+
+			this.documentType = documentType;
+			this.documentData = documentData;
+			this.recognitionPercentage = recognitionPercentage;
+		}
+
+		public DocumentType getDocumentType() {
+
+			return documentType;
+		}
+		public IDocumentData getDocumentData() {
+
+			return documentData;
+		}
+		public int getRecognitionPercentage() {
+
+			return recognitionPercentage;
+		}
+	}
+}
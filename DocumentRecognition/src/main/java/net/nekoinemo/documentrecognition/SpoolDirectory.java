@@ -0,0 +1,275 @@
+package net.nekoinemo.documentrecognition;
+
+import net.nekoinemo.documentrecognition.event.RecognitionResultEvent;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEventListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Work queue shared by several nodes (JVMs, possibly on different machines) through a common directory.
+ * Node claims a file by atomically creating the "<name>.lease" file containing its id next to it and keeps the lease alive by touching it while the file is processed,
+ * even after the spool was closed. Leases that weren't touched for longer than the lease timeout are considered abandoned and are reclaimed by the other nodes.
+ * Node only renews and removes the leases that still contain its id, the lease reclaimed by the other node is left to it.
+ * Result is written to the "<name>.result.txt" file next to the input, files having it are skipped.
+ */
+public class SpoolDirectory implements AutoCloseable {
+
+	public static final String LEASE_SUFFIX = ".lease";
+	public static final String RESULT_SUFFIX = ".result.txt";
+
+	private final RecognitionManager recognitionManager;
+	private final File directory;
+	private final RecognitionResultEventListener eventListener;
+	private final RecognitionOptions options;
+	private final String nodeId;
+	private final Map<File, File> claims = new ConcurrentHashMap<>(); // Claimed input file -> its lease file
+
+	private long leaseTimeout = 60000;
+	private long scanInterval = 2000;
+	private int maxClaims;
+	private volatile boolean isActive = false;
+	private Thread thread = null;
+
+	SpoolDirectory(RecognitionManager recognitionManager, File directory, RecognitionResultEventListener eventListener, RecognitionOptions options, int maxClaims) {
+
+		this.recognitionManager = recognitionManager;
+		this.directory = directory;
+		this.eventListener = eventListener;
+		this.options = options;
+		this.maxClaims = maxClaims;
+		this.nodeId = ManagementFactory.getRuntimeMXBean().getName() + '/' + recognitionManager.getName(); // pid@host/manager
+	}
+
+	public File getDirectory() {
+
+		return directory;
+	}
+	public String getNodeId() {
+
+		return nodeId;
+	}
+	/**
+	 * Returns the number of files currently claimed by this node.
+	 *
+	 * @return
+	 */
+	public int getClaimCount() {
+
+		return claims.size();
+	}
+	/**
+	 * Sets the time after which a lease that wasn't renewed is reclaimed by the other nodes. Should be the same on all nodes. Default is 60 seconds.
+	 *
+	 * @param leaseTimeout Time in milliseconds.
+	 */
+	public void setLeaseTimeout(long leaseTimeout) {
+
+		this.leaseTimeout = leaseTimeout;
+	}
+	/**
+	 * Sets how often the directory is scanned for the new files and leases are renewed. Should be well below the lease timeout. Default is 2 seconds.
+	 *
+	 * @param scanInterval Time in milliseconds.
+	 */
+	public void setScanInterval(long scanInterval) {
+
+		this.scanInterval = scanInterval;
+	}
+	/**
+	 * Sets the maximum number of files claimed by this node at once. Files over the limit are left to the other nodes.
+	 *
+	 * @param maxClaims
+	 */
+	public void setMaxClaims(int maxClaims) {
+
+		this.maxClaims = maxClaims;
+	}
+
+	synchronized void start() {
+
+		if (thread != null) return;
+
+		isActive = true;
+		thread = new Thread(this::run, "RecognitionManager " + recognitionManager.getName() + " spool");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Stops claiming new files. Files already claimed are processed by the RecognitionManager as usual, their leases are renewed until they are completed.
+	 */
+	@Override
+	public void close() {
+
+		synchronized (this) {
+			if (!isActive) return;
+
+			isActive = false;
+			notifyAll();
+		}
+		recognitionManager.removeSpool(this);
+	}
+	/**
+	 * Waits until the spool is closed and the leases of all claimed files are released.
+	 *
+	 * @throws InterruptedException
+	 */
+	void awaitTermination() throws InterruptedException {
+
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+		}
+
+		if (thread != null) thread.join();
+	}
+
+	private void run() {
+
+		try {
+			while (true) {
+				renewLeases();
+				if (isActive) claimFiles();
+
+				synchronized (this) {
+					if (!isActive && claims.isEmpty()) return;
+					wait(scanInterval);
+				}
+			}
+		} catch (InterruptedException e) {}
+	}
+	private void renewLeases() {
+
+		long now = System.currentTimeMillis();
+		for (File lease : claims.values()) if (isOwned(lease)) lease.setLastModified(now);
+	}
+	/**
+	 * Checks that the lease wasn't reclaimed by the other node.
+	 */
+	private boolean isOwned(File lease) {
+
+		try {
+			return nodeId.equals(new String(Files.readAllBytes(lease.toPath()), StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			return false; // Removed by the other node
+		}
+	}
+	private void claimFiles() {
+
+		File[] files = directory.listFiles(RecognitionManager.SUPPORTED_FILES_FILTER);
+		if (files == null) {
+			recognitionManager.fireMiscException("Can't list spool directory", new IOException(directory.getAbsolutePath()));
+			return;
+		}
+
+		for (File file : files) {
+			if (!isActive || claims.size() >= maxClaims) return;
+			if (claims.containsKey(file) || getResultFile(file).exists()) continue;
+
+			File lease = getLeaseFile(file);
+			if (lease.exists() && !reclaim(lease)) continue;
+			if (!createLease(lease)) continue;
+
+			claims.put(file, lease);
+			try {
+				recognitionManager.offerFile(file, eventListener, options).whenComplete((event, cause) -> complete(file, lease, event, cause));
+			} catch (RecognitionManagerException e) {
+				// Queue is full, file is left for the next scan or the other nodes
+				release(file, lease);
+				return;
+			}
+		}
+	}
+	/**
+	 * Removes the lease if it has expired.
+	 *
+	 * @param lease
+	 *
+	 * @return true if lease was removed by this node.
+	 */
+	private boolean reclaim(File lease) {
+
+		long lastModified = lease.lastModified();
+		if (lastModified == 0 || System.currentTimeMillis() - lastModified < leaseTimeout) return false;
+
+		// Rename is atomic, so only one of the nodes noticing the expired lease gets to remove it
+		Path reclaimed = lease.toPath().resolveSibling(lease.getName() + '.' + System.nanoTime());
+		try {
+			Files.move(lease.toPath(), reclaimed, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(reclaimed);
+		} catch (IOException e) {
+			return false;
+		}
+
+		return true;
+	}
+	private boolean createLease(File lease) {
+
+		try {
+			Files.write(Files.createFile(lease.toPath()), nodeId.getBytes(StandardCharsets.UTF_8));
+		} catch (FileAlreadyExistsException e) {
+			return false; // Claimed by the other node
+		} catch (IOException e) {
+			recognitionManager.fireMiscException("Can't create lease " + lease.getAbsolutePath(), e);
+			return false;
+		}
+
+		return true;
+	}
+	private void complete(File file, File lease, RecognitionResultEvent event, Throwable cause) {
+
+		// Targets aborted by stop() are left for the other nodes
+		if (!recognitionManager.isRunning()) {
+			release(file, lease);
+			return;
+		}
+
+		StringBuilder result = new StringBuilder();
+		if (event != null && event.getCause() == null) {
+			result.append(event.getDocumentID()).append('\t').append(event.getDocumentType()).append('\t').append(event.getRecognitionPercentage()).append(System.lineSeparator());
+			if (event.getDocumentData() != null) result.append(event.getDocumentData().toString(true)).append(System.lineSeparator());
+		} else {
+			Throwable error = event != null ? event.getCause() : cause;
+			result.append(file.getName()).append("\tERROR\t").append(error).append(System.lineSeparator());
+		}
+
+		// Written under a temporary name first, so the other nodes never see a partial result
+		File resultFile = getResultFile(file);
+		Path temporary = resultFile.toPath().resolveSibling(resultFile.getName() + ".tmp");
+		try {
+			Files.write(temporary, result.toString().getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, resultFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			recognitionManager.fireMiscException("Can't write result " + resultFile.getAbsolutePath(), e);
+		}
+
+		release(file, lease);
+	}
+	private void release(File file, File lease) {
+
+		try {
+			if (isOwned(lease)) Files.deleteIfExists(lease.toPath()); // Lease reclaimed by the other node belongs to it now
+		} catch (IOException e) {
+			recognitionManager.fireMiscException("Can't remove lease " + lease.getAbsolutePath(), e);
+		}
+
+		claims.remove(file);
+		synchronized (this) {
+			notifyAll(); // Closed spool finishes once the last lease is released
+		}
+	}
+
+	public static File getLeaseFile(File file) {
+
+		return new File(file.getParentFile(), file.getName() + LEASE_SUFFIX);
+	}
+	public static File getResultFile(File file) {
+
+		return new File(file.getParentFile(), file.getName() + RESULT_SUFFIX);
+	}
+}
@@ -0,0 +1,279 @@
+package net.nekoinemo.documentrecognition.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the text against the patterns of all document types at once. Patterns are compiled into a single Aho-Corasick automaton over their keywords,
+ * so the text is scanned in one pass whatever the number of the types and patterns is.
+ * Pattern is a sequence of keywords joined by ".*?", it's found when its keywords occur in order on the same line, same as Pattern.find() with the
+ * CASE_INSENSITIVE | MULTILINE flags.
+ * When classifying, the scan stops once the leading type is ahead of every other one by the decisive margin, the rest of the text is unlikely to
+ * change the result then.
+ */
+public class DocumentClassifier {
+
+	public static final float DEFAULT_DECISIVE_MARGIN = 50f;
+
+	private static final String KEYWORD_SEPARATOR = Pattern.quote(".*?");
+	private static final Pattern LITERAL = Pattern.compile("[\\p{Alnum} ]+");
+	private static DocumentClassifier instance = null;
+
+	private final DocumentType[] types;
+	private final float decisiveMargin;
+	private final int[] patternCounts; // Type -> number of its patterns
+	// Automaton
+	private final int[] alphabet = new int[128]; // ASCII character -> column of the transition table, 0 for the characters not used by keywords
+	private final int[][] transitions; // State -> column -> next state
+	private final int[][] outputs; // State -> keywords ending at it
+	private final int[] keywordLengths;
+	private final int[][] keywordSteps; // Keyword -> patterns waiting for it, as pairs of the pattern and the step
+	// Patterns
+	private final int[][] patternKeywords; // Pattern -> its keywords in order
+	private final int[] patternTypes; // Pattern -> index of its type
+
+	/**
+	 * @param decisiveMargin Lead in percentage points (see matchText()) after which classify() stops the scan. Values over 100 disable the early exit.
+	 * @param types          Document types to match. Types without patterns never match.
+	 *
+	 * @throws IllegalArgumentException if pattern isn't a sequence of literal keywords.
+	 */
+	public DocumentClassifier(float decisiveMargin, DocumentType... types) {
+
+		this.decisiveMargin = decisiveMargin;
+		this.types = types.clone();
+		this.patternCounts = new int[types.length];
+
+		LinkedHashMap<String, Integer> keywords = new LinkedHashMap<>();
+		ArrayList<int[]> patternKeywords = new ArrayList<>();
+		ArrayList<Integer> patternTypes = new ArrayList<>();
+		for (int type = 0; type < types.length; type++) {
+			for (Pattern pattern : types[type].getPatterns()) {
+				String[] parts = pattern.pattern().split(KEYWORD_SEPARATOR, -1);
+				int[] sequence = new int[parts.length];
+				for (int i = 0; i < parts.length; i++) {
+					if (!LITERAL.matcher(parts[i]).matches()) throw new IllegalArgumentException("Pattern " + pattern.pattern() + " of " + types[type] + " isn't a sequence of keywords");
+
+					String keyword = toLowerCase(parts[i]);
+					keywords.putIfAbsent(keyword, keywords.size());
+					sequence[i] = keywords.get(keyword);
+				}
+
+				patternKeywords.add(sequence);
+				patternTypes.add(type);
+				patternCounts[type]++;
+			}
+		}
+		this.patternKeywords = patternKeywords.toArray(new int[0][]);
+		this.patternTypes = patternTypes.stream().mapToInt(Integer::intValue).toArray();
+
+		ArrayList<ArrayList<Integer>> steps = new ArrayList<>();
+		for (int i = 0; i < keywords.size(); i++) steps.add(new ArrayList<>());
+		for (int pattern = 0; pattern < this.patternKeywords.length; pattern++) {
+			for (int step = 0; step < this.patternKeywords[pattern].length; step++) {
+				steps.get(this.patternKeywords[pattern][step]).add(pattern);
+				steps.get(this.patternKeywords[pattern][step]).add(step);
+			}
+		}
+		this.keywordSteps = new int[keywords.size()][];
+		for (int i = 0; i < keywords.size(); i++) keywordSteps[i] = steps.get(i).stream().mapToInt(Integer::intValue).toArray();
+
+		this.keywordLengths = new int[keywords.size()];
+		int columns = 1;
+		for (String keyword : keywords.keySet()) {
+			keywordLengths[keywords.get(keyword)] = keyword.length();
+			for (char character : keyword.toCharArray()) if (alphabet[character] == 0) alphabet[character] = columns++;
+		}
+
+		// Trie of the keywords
+		ArrayList<int[]> trie = new ArrayList<>();
+		ArrayList<ArrayList<Integer>> trieOutputs = new ArrayList<>();
+		trie.add(new int[columns]);
+		trieOutputs.add(new ArrayList<>());
+		for (String keyword : keywords.keySet()) {
+			int state = 0;
+			for (char character : keyword.toCharArray()) {
+				int column = alphabet[character];
+				if (trie.get(state)[column] == 0) {
+					trie.get(state)[column] = trie.size();
+					trie.add(new int[columns]);
+					trieOutputs.add(new ArrayList<>());
+				}
+				state = trie.get(state)[column];
+			}
+			trieOutputs.get(state).add(keywords.get(keyword));
+		}
+
+		// Failure links turn the trie into the transition table, breadth first so the failure state is always complete
+		int[] failures = new int[trie.size()];
+		ArrayList<Integer> queue = new ArrayList<>();
+		for (int column = 1; column < columns; column++) if (trie.get(0)[column] != 0) queue.add(trie.get(0)[column]);
+		for (int i = 0; i < queue.size(); i++) {
+			int state = queue.get(i);
+			trieOutputs.get(state).addAll(trieOutputs.get(failures[state])); // Keywords that are suffixes of this one
+
+			for (int column = 1; column < columns; column++) {
+				int next = trie.get(state)[column];
+				if (next != 0) {
+					failures[next] = trie.get(failures[state])[column];
+					queue.add(next);
+				} else trie.get(state)[column] = trie.get(failures[state])[column];
+			}
+		}
+
+		this.transitions = trie.toArray(new int[0][]);
+		this.outputs = new int[trie.size()][];
+		for (int state = 0; state < trie.size(); state++) outputs[state] = trieOutputs.get(state).stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the classifier of all DocumentType values with the default decisive margin.
+	 *
+	 * @return
+	 */
+	public static synchronized DocumentClassifier getInstance() {
+
+		if (instance == null) instance = new DocumentClassifier(DEFAULT_DECISIVE_MARGIN, DocumentType.values());
+
+		return instance;
+	}
+
+	/**
+	 * Returns the chance that the text belongs to the document of each type (see DocumentType.matchText()).
+	 *
+	 * @param text
+	 *
+	 * @return Percentage of the patterns found in the text, in the order of the types.
+	 */
+	public float[] matchText(String text) {
+
+		int[] scores = scan(text, false);
+
+		float[] result = new float[types.length];
+		for (int type = 0; type < types.length; type++) result[type] = percentage(scores, type);
+
+		return result;
+	}
+	/**
+	 * Returns the type with the highest chance that the text belongs to it, the first one of the equally matching types.
+	 * Scan stops as soon as the leading type is ahead of the others by the decisive margin.
+	 *
+	 * @param text
+	 *
+	 * @return Type or null if no type matches.
+	 */
+	public DocumentType classify(String text) {
+
+		int[] scores = scan(text, true);
+
+		int best = leader(scores);
+		return best >= 0 ? types[best] : null;
+	}
+
+	private int[] scan(String text, boolean stopWhenDecided) {
+
+		int[] scores = new int[types.length];
+		int[] progress = new int[patternKeywords.length]; // Number of the keywords of the pattern found on the current line
+		int[] lastEnd = new int[patternKeywords.length]; // End of the last found keyword of the pattern
+		int[] progressLine = new int[patternKeywords.length]; // Line the progress belongs to, progress on the previous lines is discarded
+		boolean[] found = new boolean[patternKeywords.length];
+		Arrays.fill(progressLine, -1);
+
+		int line = 0;
+		int state = 0;
+		for (int position = 0; position < text.length(); position++) {
+			char character = text.charAt(position);
+			if (isLineTerminator(character)) {
+				line++;
+				state = 0;
+				continue;
+			}
+
+			character = toLowerCase(character);
+			state = transitions[state][character < 128 ? alphabet[character] : 0];
+
+			for (int keyword : outputs[state]) {
+				int start = position - keywordLengths[keyword] + 1;
+				int[] steps = keywordSteps[keyword];
+				for (int i = 0; i < steps.length; i += 2) {
+					int pattern = steps[i];
+					if (found[pattern]) continue;
+					if (progressLine[pattern] != line) {
+						progressLine[pattern] = line;
+						progress[pattern] = 0;
+						lastEnd[pattern] = -1;
+					}
+					// Keywords are found in order and don't overlap, the earliest occurrence of each is always the best choice
+					if (progress[pattern] != steps[i + 1] || start <= lastEnd[pattern]) continue;
+
+					progress[pattern]++;
+					lastEnd[pattern] = position;
+					if (progress[pattern] < patternKeywords[pattern].length) continue;
+
+					found[pattern] = true;
+					scores[patternTypes[pattern]]++;
+					if (stopWhenDecided && isDecided(scores)) return scores;
+				}
+			}
+		}
+
+		return scores;
+	}
+	private boolean isDecided(int[] scores) {
+
+		int best = leader(scores);
+		if (best < 0) return false;
+
+		float leading = percentage(scores, best);
+		for (int type = 0; type < types.length; type++) if (type != best && leading - percentage(scores, type) < decisiveMargin) return false;
+
+		return true;
+	}
+	/**
+	 * Returns the index of the type with the highest percentage, the first one of the equal types.
+	 *
+	 * @return Index or -1 if no type matches.
+	 */
+	private int leader(int[] scores) {
+
+		int best = -1;
+		float bestMatch = 0f;
+		for (int type = 0; type < types.length; type++) {
+			float match = percentage(scores, type);
+			if (match > bestMatch) {
+				best = type;
+				bestMatch = match;
+			}
+		}
+
+		return best;
+	}
+	private float percentage(int[] scores, int type) {
+
+		return patternCounts[type] > 0 ? ((float) scores[type] / patternCounts[type]) * 100 : 0f;
+	}
+
+	/**
+	 * Characters '.' doesn't match without the DOTALL flag.
+	 */
+	private static boolean isLineTerminator(char character) {
+
+		return character == '\n' || character == '\r' || character == '\u0085' || character == '\u2028' || character == '\u2029';
+	}
+	/**
+	 * CASE_INSENSITIVE without UNICODE_CASE folds the US-ASCII letters only.
+	 */
+	private static char toLowerCase(char character) {
+
+		return character >= 'A' && character <= 'Z' ? (char) (character + ('a' - 'A')) : character;
+	}
+	private static String toLowerCase(String text) {
+
+		char[] characters = text.toCharArray();
+		for (int i = 0; i < characters.length; i++) characters[i] = toLowerCase(characters[i]);
+
+		return new String(characters);
+	}
+}
@@ -1,6 +1,8 @@
 package net.nekoinemo.documentrecognition.document;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public enum DocumentType {
@@ -33,13 +35,25 @@ public enum DocumentType {
 		this.patterns = patterns;
 	}
 
+	/**
+	 * Returns the chance that the text belongs to the document of this type. Use DocumentClassifier to match all types at once.
+	 *
+	 * @param text
+	 *
+	 * @return Percentage of the patterns found in the text.
+	 */
 	public float matchText(String text) {
 
-		int result = 0;
-
-		for (Pattern pattern : patterns) if (pattern.matcher(text).find()) result++;
+		return DocumentClassifier.getInstance().matchText(text)[ordinal()];
+	}
+	/**
+	 * Returns the patterns identifying the type. Every pattern is a sequence of keywords joined by ".*?" (see DocumentClassifier).
+	 *
+	 * @return
+	 */
+	public List<Pattern> getPatterns() {
 
-		return (((float) result / patterns.size()) * 100);
+		return Collections.unmodifiableList(patterns);
 	}
 	public IDocumentDataBuilder getBuilder() {
 
@@ -1,6 +1,11 @@
 package net.nekoinemo.documentrecognition.document;
 
-public interface IDocumentData {
+import java.io.Serializable;
+
+/**
+ * Recognized fields of the document. Implementations are serializable so results can be stored, see ResultCache.
+ */
+public interface IDocumentData extends Serializable {
 
 	/**
 	 * Returns the type of the document.
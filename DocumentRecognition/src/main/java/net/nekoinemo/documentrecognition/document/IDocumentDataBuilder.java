@@ -8,5 +8,12 @@ public interface IDocumentDataBuilder {
 	int getCompleteness();
 
 	void processImage(RecognitionManager.RecognitionTarget target, RecognitionSettings[] settings) throws RecognitionManagerException;
+	/**
+	 * Takes over the results of the builder that processed the earlier entries of the settings cascade, as if this builder continued after it.
+	 * Fields found by this builder are kept, the rest are taken from the earlier one.
+	 *
+	 * @param earlier Builder of the same document type.
+	 */
+	void continueFrom(IDocumentDataBuilder earlier);
 	String getDebugText();
 }
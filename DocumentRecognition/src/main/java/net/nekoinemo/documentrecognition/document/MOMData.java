@@ -1,7 +1,11 @@
 package net.nekoinemo.documentrecognition.document;
 
+import java.lang.reflect.Field;
+
 public class MOMData implements IDocumentData {
 
+	private static final long serialVersionUID = 1L;
+
 	protected static final String[] DATA_FIELDS = new String[]{ "date_of_birth", "employer_name", "employer_telephone", "employer_uen", "full_name", "nationality", "nric_or_fin_number", "occupation", "passport_number", "work_permit_number", "work_permit_expiry", "employment_agency_address" };
 
 	protected String date_of_birth = null;
@@ -86,6 +90,21 @@ public class MOMData implements IDocumentData {
 		return (int) (((float) completeness / DATA_FIELDS.length) * 100);
 	}
 
+	/**
+	 * Takes the fields which weren't found from the other data.
+	 *
+	 * @param other
+	 */
+	void fillMissing(MOMData other) {
+
+		for (String fieldName : DATA_FIELDS) {
+			try {
+				Field field = MOMData.class.getDeclaredField(fieldName);
+				if (field.get(this) == null) field.set(this, field.get(other));
+			} catch (Exception e) {}
+		}
+	}
+
 	@Override
 	public String toString() {
 
@@ -4,7 +4,7 @@ import net.nekoinemo.documentrecognition.*;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 
-import java.io.File;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -73,19 +73,36 @@ public class MOMDataBuilder implements IDocumentDataBuilder {
 	@Override
 	public void processImage(RecognitionManager.RecognitionTarget target, RecognitionSettings[] settings) throws RecognitionManagerException {
 
+		ClassificationPass classificationPass = target.getClassificationPass();
 		int currentSettings = 0;
-		while (currentSettings < settings.length && getCompleteness() < settings[currentSettings].getPassingCompliteness()){
+		while (currentSettings < settings.length && getCompleteness() < settings[currentSettings].getPassingCompliteness() && !target.isBudgetExceeded()){
 			debugText.append("\nIteration " + (currentSettings + 1) + '/' + settings.length + '\t' + settings[currentSettings].toString() + '\n');
 
-			for (File file : target.getImages()) {
-				debugText.append("\nFile " + file.getName() + '\n');
-				doRecognition(file, settings[currentSettings]);
+			for (int i = 0; i < target.getPages().size(); i++) {
+				if (target.isBudgetExceeded()) break;
+
+				PageImage page = target.getPages().get(i);
+				debugText.append("\nFile " + page.getName() + '\n');
+
+				// Text layer of the page is used as is. Classified page is recognized at the full resolution once for all builders of the target, if the settings match the classification
+				Document textLayer = page.getTextLayer();
+				ClassificationPass fullResolutionPass = textLayer == null && classificationPass != null && classificationPass.getPageIndex() == i ? target.getFullResolutionPass(settings[currentSettings]) : null;
+				if (textLayer != null) parseText(textLayer);
+				else if (fullResolutionPass != null) parseText(fullResolutionPass.getHOCR());
+				else doRecognition(target.getRecognitionManager(), page.getImage(), settings[currentSettings]);
 			}
 
 			currentSettings++;
 		}
 	}
 	@Override
+	public void continueFrom(IDocumentDataBuilder earlier) {
+
+		// Fields are parsed from every pass independently, later passes only overwrite the fields they find
+		momData.fillMissing(((MOMDataBuilder) earlier).momData);
+		debugText.insert(0, earlier.getDebugText());
+	}
+	@Override
 	public int getCompleteness() {
 
 		return momData.getCompleteness();
@@ -96,10 +113,12 @@ public class MOMDataBuilder implements IDocumentDataBuilder {
 		return debugText.toString();
 	}
 
-	private void doRecognition(File target,  RecognitionSettings settings) throws RecognitionManagerException {
+	private void doRecognition(RecognitionManager recognitionManager, BufferedImage target, RecognitionSettings settings) throws RecognitionManagerException {
+
+		parseText(Jsoup.parse(recognitionManager.recognize(target, null, settings)));
+	}
+	private void parseText(Document document) {
 
-		RecognitionManager recognitionManager = RecognitionManager.getInstance();
-		Document document = Jsoup.parse(recognitionManager.recognize(target, null, settings));
 		String rawText = Helper.getProperTextFromJSoupDoc(document);
 
 		debugText.append("rawText: { " + rawText + " }\n\n");
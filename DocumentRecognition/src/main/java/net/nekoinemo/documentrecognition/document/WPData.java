@@ -1,7 +1,11 @@
 package net.nekoinemo.documentrecognition.document;
 
+import java.lang.reflect.Field;
+
 public class WPData implements IDocumentData {
 
+	private static final long serialVersionUID = 1L;
+
 	protected static final String[] DATA_FIELDS = new String[]{ "full_name", "employer_name", "work_permit_number", "work_permit_category", "work_permit_expiration_date", "date_of_birth", "fin_number", "nationality" };
 
 	// Work Permit side
@@ -69,6 +73,21 @@ public class WPData implements IDocumentData {
 		return (int) (((float) completeness / DATA_FIELDS.length) * 100);
 	}
 
+	/**
+	 * Takes the fields which weren't found from the other data.
+	 *
+	 * @param other
+	 */
+	void fillMissing(WPData other) {
+
+		for (String fieldName : DATA_FIELDS) {
+			try {
+				Field field = WPData.class.getDeclaredField(fieldName);
+				if (field.get(this) == null) field.set(this, field.get(other));
+			} catch (Exception e) {}
+		}
+	}
+
 	@Override
 	public String toString() {
 
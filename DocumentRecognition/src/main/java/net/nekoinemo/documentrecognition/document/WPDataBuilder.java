@@ -3,6 +3,7 @@ package net.nekoinemo.documentrecognition.document;
 import net.nekoinemo.documentrecognition.*;
 import net.nekoinemo.documentrecognition.misc.VisitPassAreaStructure;
 import net.nekoinemo.documentrecognition.misc.WorkPermitAreaStructure;
+import net.nekoinemo.documentrecognition.ocr.OCRSession;
 import net.nekoinemo.documentrecognition.processing.ImageHelper;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -22,16 +23,20 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 
 	private final StringBuilder debugText = new StringBuilder();
 	private String debugFilePrefix = "";
+	private RecognitionManager recognitionManager = null; // Manager processing the current target
+	private RecognitionManager.RecognitionTarget target = null;
 
 	// Work Permit
 	private final static Pattern WP_PATTERN_TITLE = Pattern.compile("WORK.*?PERMIT");
 	private WorkPermitAreaStructure workPermitAreaStructure = null;
 	private BufferedImage workPermitCropped = null;
+	private OCRSession workPermitSession = null;
 
 	// Visit Pass
 	private final static Pattern VP_PATTERN_TITLE = Pattern.compile("VISIT.*?PASS");
 	private VisitPassAreaStructure visitPassAreaStructure = null;
 	private BufferedImage visitPassCropped = null;
+	private OCRSession visitPassSession = null;
 
 	private final WPData wpData;
 
@@ -48,82 +53,91 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 	@Override
 	public void processImage(RecognitionManager.RecognitionTarget target, RecognitionSettings[] settings) throws RecognitionManagerException {
 
-		debugFilePrefix = target.getFile().getName();
+		debugFilePrefix = target.getId();
+		recognitionManager = target.getRecognitionManager();
+		this.target = target;
 
-		int currentSettings = 0;
-		while (currentSettings < settings.length && getCompleteness() < settings[currentSettings].getPassingCompliteness()) {
-			debugText.append("\nIteration " + (currentSettings + 1) + '/' + settings.length + '\t' + settings[currentSettings].toString() + '\n');
+		try {
+			// Builder can be continued on another thread, sessions belong to the engine of the thread that opened them
+			if (workPermitAreaStructure != null) workPermitSession = recognitionManager.openSession(workPermitCropped);
+			if (visitPassAreaStructure != null) visitPassSession = recognitionManager.openSession(visitPassCropped);
 
-			// Try find locations of card sides and crop them out
-			int currentImage = 0;
-			while (workPermitAreaStructure == null && visitPassAreaStructure == null && currentImage < target.getImages().size()) {
-				try {
-					findCardLocations(ImageIO.read(target.getImages().get(currentImage)), settings[currentSettings]);
-				} catch (IOException e) {
-					throw new RecognitionManagerException("Can't read image " + target.getImages().get(currentImage).getName(), e);
+			int currentSettings = 0;
+			while (currentSettings < settings.length && getCompleteness() < settings[currentSettings].getPassingCompliteness() && !target.isBudgetExceeded()) {
+				debugText.append("\nIteration " + (currentSettings + 1) + '/' + settings.length + '\t' + settings[currentSettings].toString() + '\n');
+
+				// Try find locations of card sides and crop them out
+				int currentImage = 0;
+				while (workPermitAreaStructure == null && visitPassAreaStructure == null && currentImage < target.getPages().size() && !target.isBudgetExceeded()) {
+					findCardLocations(currentImage, settings[currentSettings]);
+
+					currentImage++;
 				}
 
-				currentImage++;
-			}
+				// Do recognition with current settings
+				if (workPermitAreaStructure != null) {
+					// Get data in selected areas
+					String full_name = recognizeRegion(workPermitSession, workPermitAreaStructure.getName(), settings[currentSettings]);
+					String employer_name = recognizeRegion(workPermitSession, workPermitAreaStructure.getEmployer(), settings[currentSettings]);
+					String work_permit_category = recognizeRegion(workPermitSession, workPermitAreaStructure.getCategory(), settings[currentSettings]);
+					String work_permit_number = recognizeRegion(workPermitSession, workPermitAreaStructure.getNumber(), settings[currentSettings]);
+
+					String work_permit_expiration_date_raw = recognizeRegion(workPermitSession, workPermitAreaStructure.getDateOfExpiry(), settings[currentSettings]);
+					Matcher matcherExpDate = PATTERN_DATE.matcher(work_permit_expiration_date_raw);
+					String work_permit_expiration_date = "";
+					if (matcherExpDate.find())
+						work_permit_expiration_date = matcherExpDate.group(1) + '/' + matcherExpDate.group(2) + '/' + matcherExpDate.group(3);
+
+					// Debug text
+					debugText.append("full_name: { " + full_name + " }\n");
+					debugText.append("employer_name: { " + employer_name + " }\n");
+					debugText.append("work_permit_category: { " + work_permit_category + " }\n");
+					debugText.append("work_permit_number: { " + work_permit_number + " }\n");
+					debugText.append("work_permit_expiration_date_raw: { " + work_permit_expiration_date_raw + " }\n");
+					debugText.append("work_permit_expiration_date: { " + work_permit_expiration_date + " }\n");
+
+					// Save found data
+					if (!full_name.isEmpty()) wpData.full_name = full_name;
+					if (!employer_name.isEmpty()) wpData.employer_name = employer_name;
+					if (!work_permit_category.isEmpty()) wpData.work_permit_category = work_permit_category;
+					if (!work_permit_number.isEmpty()) wpData.work_permit_number = work_permit_number;
+					if (!work_permit_expiration_date.isEmpty())
+						wpData.work_permit_expiration_date = work_permit_expiration_date;
+				}
+				if (visitPassAreaStructure != null) {
+					// Get data in selected areas
+					String nationality = recognizeRegion(visitPassSession, visitPassAreaStructure.getNationality(), settings[currentSettings]);
+					String fin_number = recognizeRegion(visitPassSession, visitPassAreaStructure.getFinNumber(), settings[currentSettings]);
+
+					String date_of_birth_raw = recognizeRegion(visitPassSession, visitPassAreaStructure.getDateOfBirth(), settings[currentSettings]);
+					String date_of_birth = "";
+					Matcher matcherExpDate = PATTERN_DATE.matcher(date_of_birth_raw);
+					if (matcherExpDate.find())
+						date_of_birth = matcherExpDate.group(1) + '/' + matcherExpDate.group(2) + '/' + matcherExpDate.group(3);
+
+					// Debug text
+					debugText.append("nationality: { " + nationality + " }\n");
+					debugText.append("fin_number: { " + fin_number + " }\n");
+					debugText.append("date_of_birth_raw: { " + date_of_birth_raw + " }\n");
+					debugText.append("date_of_birth: { " + date_of_birth + " }\n");
+
+					// Save found data
+					if (!nationality.isEmpty()) wpData.nationality = nationality;
+					if (!fin_number.isEmpty()) wpData.fin_number = fin_number;
+					if (!date_of_birth.isEmpty()) wpData.date_of_birth = date_of_birth;
+				}
 
-			// Do recognition with current settings
-			if (workPermitAreaStructure != null) {
-				// Get data in selected areas
-				String full_name = recognizeRegion(workPermitCropped, workPermitAreaStructure.getName(), settings[currentSettings]);
-				String employer_name = recognizeRegion(workPermitCropped, workPermitAreaStructure.getEmployer(), settings[currentSettings]);
-				String work_permit_category = recognizeRegion(workPermitCropped, workPermitAreaStructure.getCategory(), settings[currentSettings]);
-				String work_permit_number = recognizeRegion(workPermitCropped, workPermitAreaStructure.getNumber(), settings[currentSettings]);
-
-				String work_permit_expiration_date_raw = recognizeRegion(workPermitCropped, workPermitAreaStructure.getDateOfExpiry(), settings[currentSettings]);
-				Matcher matcherExpDate = PATTERN_DATE.matcher(work_permit_expiration_date_raw);
-				String work_permit_expiration_date = "";
-				if (matcherExpDate.find())
-					work_permit_expiration_date = matcherExpDate.group(1) + '/' + matcherExpDate.group(2) + '/' + matcherExpDate.group(3);
-
-				// Debug text
-				debugText.append("full_name: { " + full_name + " }\n");
-				debugText.append("employer_name: { " + employer_name + " }\n");
-				debugText.append("work_permit_category: { " + work_permit_category + " }\n");
-				debugText.append("work_permit_number: { " + work_permit_number + " }\n");
-				debugText.append("work_permit_expiration_date_raw: { " + work_permit_expiration_date_raw + " }\n");
-				debugText.append("work_permit_expiration_date: { " + work_permit_expiration_date + " }\n");
-
-				// Save found data
-				if (!full_name.isEmpty()) wpData.full_name = full_name;
-				if (!employer_name.isEmpty()) wpData.employer_name = employer_name;
-				if (!work_permit_category.isEmpty()) wpData.work_permit_category = work_permit_category;
-				if (!work_permit_number.isEmpty()) wpData.work_permit_number = work_permit_number;
-				if (!work_permit_expiration_date.isEmpty())
-					wpData.work_permit_expiration_date = work_permit_expiration_date;
+				currentSettings++;
 			}
-			if (visitPassAreaStructure != null) {
-				// Get data in selected areas
-				String nationality = recognizeRegion(visitPassCropped, visitPassAreaStructure.getNationality(), settings[currentSettings]);
-				String fin_number = recognizeRegion(visitPassCropped, visitPassAreaStructure.getFinNumber(), settings[currentSettings]);
-
-				String date_of_birth_raw = recognizeRegion(visitPassCropped, visitPassAreaStructure.getDateOfBirth(), settings[currentSettings]);
-				String date_of_birth = "";
-				Matcher matcherExpDate = PATTERN_DATE.matcher(date_of_birth_raw);
-				if (matcherExpDate.find())
-					date_of_birth = matcherExpDate.group(1) + '/' + matcherExpDate.group(2) + '/' + matcherExpDate.group(3);
-
-				// Debug text
-				debugText.append("nationality: { " + nationality + " }\n");
-				debugText.append("fin_number: { " + fin_number + " }\n");
-				debugText.append("date_of_birth_raw: { " + date_of_birth_raw + " }\n");
-				debugText.append("date_of_birth: { " + date_of_birth + " }\n");
-
-				// Save found data
-				if (!nationality.isEmpty()) wpData.nationality = nationality;
-				if (!fin_number.isEmpty()) wpData.fin_number = fin_number;
-				if (!date_of_birth.isEmpty()) wpData.date_of_birth = date_of_birth;
-			}
-
-			currentSettings++;
+		} finally {
+			if (workPermitSession != null) workPermitSession.close();
+			if (visitPassSession != null) visitPassSession.close();
+			workPermitSession = null;
+			visitPassSession = null;
 		}
 
 		// Debug graphical output
-		if (workPermitAreaStructure != null && RecognitionManager.INSTANCE.isDebugOutput()) {
+		if (workPermitAreaStructure != null && recognitionManager.isDebugOutput()) {
 			BufferedImage debugWP = ImageHelper.copyImage(workPermitCropped);
 			Graphics2D debugGraph = debugWP.createGraphics();
 			debugGraph.setColor(Color.BLACK);
@@ -138,12 +152,12 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 			debugGraph.dispose();
 
 			try {
-				ImageIO.write(debugWP, "png", RecognitionManager.INSTANCE.getDebugFile(debugFilePrefix + "_WPMarked.png"));
+				ImageIO.write(debugWP, "png", recognitionManager.getDebugFile(debugFilePrefix + "_WPMarked.png"));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
-		if (visitPassAreaStructure != null && RecognitionManager.INSTANCE.isDebugOutput()) {
+		if (visitPassAreaStructure != null && recognitionManager.isDebugOutput()) {
 			BufferedImage debugWP = ImageHelper.copyImage(visitPassCropped);
 			Graphics2D debugGraph = debugWP.createGraphics();
 			debugGraph.setColor(Color.BLACK);
@@ -156,13 +170,28 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 			debugGraph.dispose();
 
 			try {
-				ImageIO.write(debugWP, "png", RecognitionManager.INSTANCE.getDebugFile(debugFilePrefix + "_VPMarked.png"));
+				ImageIO.write(debugWP, "png", recognitionManager.getDebugFile(debugFilePrefix + "_VPMarked.png"));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	@Override
+	public void continueFrom(IDocumentDataBuilder earlier) {
+
+		WPDataBuilder earlierBuilder = (WPDataBuilder) earlier;
+		wpData.fillMissing(earlierBuilder.wpData);
+		debugText.insert(0, earlierBuilder.debugText);
+
+		// Cards found by the earlier passes would've been used instead of searching again. Sessions are opened by processImage()
+		if (workPermitAreaStructure == null && visitPassAreaStructure == null) {
+			workPermitAreaStructure = earlierBuilder.workPermitAreaStructure;
+			workPermitCropped = earlierBuilder.workPermitCropped;
+			visitPassAreaStructure = earlierBuilder.visitPassAreaStructure;
+			visitPassCropped = earlierBuilder.visitPassCropped;
+		}
+	}
+	@Override
 	public int getCompleteness() {
 
 		return wpData.getCompleteness();
@@ -173,83 +202,126 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 		return debugText.toString();
 	}
 
-	private String recognizeRegion(BufferedImage image, Rectangle region, RecognitionSettings settings) throws RecognitionManagerException {
+	private String recognizeRegion(OCRSession session, Rectangle region, RecognitionSettings settings) throws RecognitionManagerException {
 
-		return Helper.getProperTextFromJSoupDoc(Jsoup.parse(RecognitionManager.INSTANCE.recognize(image, region, settings))).trim();
+		return Helper.getProperTextFromJSoupDoc(Jsoup.parse(session.recognize(region, settings))).trim();
+	}
+	private Document recognizePage(BufferedImage image, RecognitionSettings settings) throws RecognitionManagerException {
+
+		OCRSession imageSession = recognitionManager.openSession(image);
+		try {
+			return Jsoup.parse(imageSession.recognize(null, settings));
+		} finally {
+			imageSession.close();
+		}
 	}
 	/**
 	 * Try to find location of the cards on this image. Image will be rotated in case both sides of card are present and have different orientation
 	 *
-	 * @param image
+	 * @param pageIndex
 	 * @param settings
 	 *
 	 * @throws RecognitionManagerException
 	 */
-	private void findCardLocations(BufferedImage image, RecognitionSettings settings) throws RecognitionManagerException {
+	private void findCardLocations(int pageIndex, RecognitionSettings settings) throws RecognitionManagerException {
 
+		BufferedImage image = target.getPages().get(pageIndex).getImage();
+		ClassificationPass classificationPass = target.getClassificationPass();
 		int currentRotation = 0;
 
-		while (currentRotation < 360 && workPermitAreaStructure == null) {
-			Document hOCRText = Jsoup.parse(RecognitionManager.INSTANCE.recognize(image, null, settings));
-
-			// Try find the location of a WP card side
-			if (workPermitAreaStructure == null) {
-				// Get card title location
-				Rectangle titleBBox = findWorkPermitTitleBBox(hOCRText);
-				if (titleBBox != null) {
-					// Get area containing the card
-					Rectangle wpEstimatedLocation = WorkPermitAreaStructure.estimateLocation(titleBBox, image.getWidth(), image.getHeight());
-					// Get deskewed crop of the card
-					workPermitCropped = ImageHelper.deskewImage(ImageHelper.copyImage(image, wpEstimatedLocation));
-
-					// Debug save cropped region
-					if (RecognitionManager.INSTANCE.isDebugOutput()) {
-						try {
-							ImageIO.write(workPermitCropped, "png", RecognitionManager.INSTANCE.getDebugFile(debugFilePrefix + "_WPCropped.png"));
-						} catch (IOException e) {}
-					}
+		while (currentRotation < 360 && workPermitAreaStructure == null && !target.isBudgetExceeded()) {
+			BufferedImage rotatedImage = ImageHelper.rotate(image, currentRotation);
+
+			// Page in its found orientation is recognized at the full resolution once for all builders of the target, if the settings match the classification
+			ClassificationPass fullResolutionPass = currentRotation == 0 && classificationPass != null && classificationPass.getPageIndex() == pageIndex ? target.getFullResolutionPass(settings) : null;
+			if (fullResolutionPass != null) findCardLocations(rotatedImage, fullResolutionPass.getHOCR(), fullResolutionPass.getScale(), settings);
+			else findCardLocations(rotatedImage, recognizePage(rotatedImage, settings), 1f, settings);
+
+			currentRotation += 90;
+		}
+	}
+	/**
+	 * @param image
+	 * @param hOCRText  Recognized text of the image.
+	 * @param hOCRScale Scale of the image the text was recognized on relative to this image. Title is only located roughly on it, fine location is found on the crop.
+	 * @param settings
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	private void findCardLocations(BufferedImage image, Document hOCRText, float hOCRScale, RecognitionSettings settings) throws RecognitionManagerException {
+
+		// Try find the location of a WP card side
+		if (workPermitAreaStructure == null) {
+			// Get card title location
+			Rectangle titleBBox = scaleRectangle(findWorkPermitTitleBBox(hOCRText), hOCRScale);
+			if (titleBBox != null) {
+				// Get area containing the card
+				Rectangle wpEstimatedLocation = WorkPermitAreaStructure.estimateLocation(titleBBox, image.getWidth(), image.getHeight());
+				// Get deskewed crop of the card
+				workPermitCropped = ImageHelper.deskewImage(ImageHelper.copyImage(image, wpEstimatedLocation));
+
+				// Debug save cropped region
+				if (recognitionManager.isDebugOutput()) {
+					try {
+						ImageIO.write(workPermitCropped, "png", recognitionManager.getDebugFile(debugFilePrefix + "_WPCropped.png"));
+					} catch (IOException e) {}
+				}
 
-					// Get card title fine location
-					titleBBox = findWorkPermitTitleBBox(workPermitCropped, settings);
-					// Get card fine location
-					if (titleBBox != null)
-						workPermitAreaStructure = new WorkPermitAreaStructure(titleBBox, workPermitCropped.getWidth(), workPermitCropped.getHeight());
-					else workPermitCropped = null;
+				// Get card title fine location. Cropped card stays uploaded to the engine for the fields recognition
+				workPermitSession = recognitionManager.openSession(workPermitCropped);
+				titleBBox = findWorkPermitTitleBBox(workPermitSession, settings);
+				// Get card fine location
+				if (titleBBox != null)
+					workPermitAreaStructure = new WorkPermitAreaStructure(titleBBox, workPermitCropped.getWidth(), workPermitCropped.getHeight());
+				else {
+					workPermitSession.close();
+					workPermitSession = null;
+					workPermitCropped = null;
 				}
 			}
-			// Try find the location of a VP card side
-			if (visitPassAreaStructure == null) {
-				// Get card title location
-				Rectangle titleBBox = findVisitPassTitleBBox(hOCRText);
-				if (titleBBox != null) {
-					// Get area containing the card
-					Rectangle vpEstimatedLocation = VisitPassAreaStructure.estimateLocation(titleBBox, image.getWidth(), image.getHeight());
-					// Get deskewed crop of the card
-					visitPassCropped = ImageHelper.deskewImage(ImageHelper.copyImage(image, vpEstimatedLocation));
-
-					// Debug save cropped region
-					if (RecognitionManager.INSTANCE.isDebugOutput()) {
-						try {
-							ImageIO.write(visitPassCropped, "png", RecognitionManager.INSTANCE.getDebugFile(debugFilePrefix + "_VPCropped.png"));
-						} catch (IOException e) {}
-					}
+		}
+		// Try find the location of a VP card side
+		if (visitPassAreaStructure == null) {
+			// Get card title location
+			Rectangle titleBBox = scaleRectangle(findVisitPassTitleBBox(hOCRText), hOCRScale);
+			if (titleBBox != null) {
+				// Get area containing the card
+				Rectangle vpEstimatedLocation = VisitPassAreaStructure.estimateLocation(titleBBox, image.getWidth(), image.getHeight());
+				// Get deskewed crop of the card
+				visitPassCropped = ImageHelper.deskewImage(ImageHelper.copyImage(image, vpEstimatedLocation));
+
+				// Debug save cropped region
+				if (recognitionManager.isDebugOutput()) {
+					try {
+						ImageIO.write(visitPassCropped, "png", recognitionManager.getDebugFile(debugFilePrefix + "_VPCropped.png"));
+					} catch (IOException e) {}
+				}
 
-					// Get card title fine location
-					titleBBox = findVisitPassTitleBBox(visitPassCropped, settings);
-					// Get card fine location
-					if (titleBBox != null)
-						visitPassAreaStructure = new VisitPassAreaStructure(titleBBox, visitPassCropped.getWidth(), visitPassCropped.getHeight());
-					else visitPassCropped = null;
+				// Get card title fine location. Cropped card stays uploaded to the engine for the fields recognition
+				visitPassSession = recognitionManager.openSession(visitPassCropped);
+				titleBBox = findVisitPassTitleBBox(visitPassSession, settings);
+				// Get card fine location
+				if (titleBBox != null)
+					visitPassAreaStructure = new VisitPassAreaStructure(titleBBox, visitPassCropped.getWidth(), visitPassCropped.getHeight());
+				else {
+					visitPassSession.close();
+					visitPassSession = null;
+					visitPassCropped = null;
 				}
 			}
-
-			currentRotation += 90;
 		}
+
 	}
 
-	private Rectangle findWorkPermitTitleBBox(BufferedImage image, RecognitionSettings settings) throws RecognitionManagerException {
+	private static Rectangle scaleRectangle(Rectangle rectangle, float scale) {
+
+		if (rectangle == null || scale == 1f) return rectangle;
+
+		return new Rectangle(Math.round(rectangle.x / scale), Math.round(rectangle.y / scale), Math.round(rectangle.width / scale), Math.round(rectangle.height / scale));
+	}
+	private Rectangle findWorkPermitTitleBBox(OCRSession session, RecognitionSettings settings) throws RecognitionManagerException {
 
-		Document hOCRText = Jsoup.parse(RecognitionManager.INSTANCE.recognize(image, null, settings));
+		Document hOCRText = Jsoup.parse(session.recognize(null, settings));
 		return findWorkPermitTitleBBox(hOCRText);
 	}
 	private Rectangle findWorkPermitTitleBBox(Document hOCRText) {
@@ -281,9 +353,9 @@ public class WPDataBuilder implements IDocumentDataBuilder {
 
 		return null;
 	}
-	private Rectangle findVisitPassTitleBBox(BufferedImage image, RecognitionSettings settings) throws RecognitionManagerException {
+	private Rectangle findVisitPassTitleBBox(OCRSession session, RecognitionSettings settings) throws RecognitionManagerException {
 
-		Document hOCRText = Jsoup.parse(RecognitionManager.INSTANCE.recognize(image, null, settings));
+		Document hOCRText = Jsoup.parse(session.recognize(null, settings));
 		return findVisitPassTitleBBox(hOCRText);
 	}
 	private Rectangle findVisitPassTitleBBox(Document hOCRText) {
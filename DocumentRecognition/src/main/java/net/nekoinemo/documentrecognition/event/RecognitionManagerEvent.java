@@ -1,6 +1,6 @@
 package net.nekoinemo.documentrecognition.event;
 
-import net.nekoinemo.documentrecognition.RecognitionManager;
+import net.nekoinemo.documentrecognition.IRecognitionManager;
 
 import java.util.EventObject;
 
@@ -10,9 +10,9 @@ public class RecognitionManagerEvent extends EventObject {
 	private String message = "";
 	private String fileCause = null;
 
-	private RecognitionManagerEvent() {
+	private RecognitionManagerEvent(IRecognitionManager source) {
 
-		super(RecognitionManager.getInstance());
+		super(source);
 	}
 
 	/**
@@ -47,9 +47,12 @@ public class RecognitionManagerEvent extends EventObject {
 
 		private RecognitionManagerEvent event;
 
-		public RecognitionManagerEventBuilder() {
+		/**
+		 * @param source RecognitionManager firing the event.
+		 */
+		public RecognitionManagerEventBuilder(IRecognitionManager source) {
 
-			event = new RecognitionManagerEvent();
+			event = new RecognitionManagerEvent(source);
 		}
 
 		public RecognitionManagerEvent getEvent() {
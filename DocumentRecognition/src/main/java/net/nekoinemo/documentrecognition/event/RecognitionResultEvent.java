@@ -1,6 +1,6 @@
 package net.nekoinemo.documentrecognition.event;
 
-import net.nekoinemo.documentrecognition.RecognitionManager;
+import net.nekoinemo.documentrecognition.IRecognitionManager;
 import net.nekoinemo.documentrecognition.document.DocumentType;
 import net.nekoinemo.documentrecognition.document.IDocumentData;
 
@@ -12,11 +12,12 @@ public class RecognitionResultEvent extends EventObject {
 	private IDocumentData documentData = null;
 	private DocumentType documentType = null;
 	private int recognitionPercentage = 0;
+	private boolean budgetExceeded = false;
 	private Throwable cause = null;
 
-	private RecognitionResultEvent(String documentID) {
+	private RecognitionResultEvent(IRecognitionManager source, String documentID) {
 
-		super(RecognitionManager.getInstance());
+		super(source);
 
 		this.documentID = documentID;
 	}
@@ -67,14 +68,27 @@ public class RecognitionResultEvent extends EventObject {
 
 		return recognitionPercentage;
 	}
+	/**
+	 * Returns whenever processing was stopped because the time budget of the target ran out. Result contains the data found until then.
+	 *
+	 * @return
+	 */
+	public boolean isBudgetExceeded() {
+
+		return budgetExceeded;
+	}
 
 	public static class RecognitionResultEventBuilder {
 
 		private RecognitionResultEvent event;
 
-		public RecognitionResultEventBuilder(String documentID) {
+		/**
+		 * @param source     RecognitionManager which processed the document.
+		 * @param documentID
+		 */
+		public RecognitionResultEventBuilder(IRecognitionManager source, String documentID) {
 
-			event = new RecognitionResultEvent(documentID);
+			event = new RecognitionResultEvent(source, documentID);
 		}
 
 		public RecognitionResultEvent getEvent() {
@@ -97,6 +111,11 @@ public class RecognitionResultEvent extends EventObject {
 			event.recognitionPercentage = recognitionPercentage;
 			return this;
 		}
+		public RecognitionResultEventBuilder setBudgetExceeded(boolean budgetExceeded) {
+
+			event.budgetExceeded = budgetExceeded;
+			return this;
+		}
 		public RecognitionResultEventBuilder setCause(Throwable cause) {
 
 			event.cause = cause;
@@ -0,0 +1,225 @@
+package net.nekoinemo.documentrecognition.ocr;
+
+import com.sun.jna.Pointer;
+import net.nekoinemo.documentrecognition.RecognitionManagerException;
+import net.nekoinemo.documentrecognition.RecognitionSettings;
+import net.nekoinemo.documentrecognition.processing.ImageHelper;
+import net.sourceforge.tess4j.TessAPI;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Session layer over the native Tesseract API. Keeps initialized engine handles alive between recognitions instead of loading trained data on every call.
+ * One handle is kept per engine mode, page segmentation mode is switched on the existing handle.
+ * Pixels are packed into the direct buffers owned by the engine and reused by the following sessions, so no buffer is allocated per recognition.
+ * Not thread safe - every thread should use its own OCREngine.
+ */
+public class OCREngine {
+
+	static {
+		System.setProperty("jna.encoding", "UTF8"); // Tesseract returns text in UTF-8
+	}
+
+	private static final TessAPI API = TessAPI.INSTANCE;
+	private static final int MAX_IDLE_BUFFERS = 4; // Builders keep at most a few sessions open at once
+
+	private final String dataPath;
+	private final String language;
+	private final HashMap<Integer, TessAPI.TessBaseAPI> handles = new HashMap<>();
+	private final HashMap<Integer, OCRSession> loadedSessions = new HashMap<>(); // Session whose image is currently set on the handle of the engine mode
+	private final ArrayList<ByteBuffer> idleBuffers = new ArrayList<>(); // Pixel buffers of the closed sessions
+
+	/**
+	 * @param dataPath Path to the tessdata directory. If null - TESSDATA_PREFIX environment variable is used.
+	 * @param language
+	 */
+	public OCREngine(String dataPath, String language) {
+
+		this.dataPath = dataPath;
+		this.language = language;
+	}
+
+	public String getDataPath() {
+
+		return dataPath;
+	}
+
+	/**
+	 * Uploads the image for the repeated recognition of its different areas.
+	 *
+	 * @param image
+	 *
+	 * @return
+	 */
+	public OCRSession openSession(BufferedImage image) {
+
+		return new OCRSession(this, image);
+	}
+	/**
+	 * Recognizes the area of the image and returns the result in the hOCR format (see http://en.wikipedia.org/wiki/HOCR).
+	 *
+	 * @param image
+	 * @param area                Area of the image to recognize. If null - the whole image is recognized.
+	 * @param recognitionSettings
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	public String recognize(BufferedImage image, Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+
+		return recognize(image, area, recognitionSettings.getEngineMode(), recognitionSettings.getPageSegMode(), true);
+	}
+	/**
+	 * Recognizes the area of the image.
+	 *
+	 * @param image
+	 * @param area        Area of the image to recognize. If null - the whole image is recognized.
+	 * @param engineMode
+	 * @param pageSegMode
+	 * @param hOCR        If true - result is returned in the hOCR format, otherwise as a plain text.
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	public String recognize(BufferedImage image, Rectangle area, int engineMode, int pageSegMode, boolean hOCR) throws RecognitionManagerException {
+
+		OCRSession session = openSession(image);
+		try {
+			return session.recognize(area, engineMode, pageSegMode, hOCR);
+		} finally {
+			session.close();
+		}
+	}
+	/**
+	 * Releases all native handles. Engine can be used again afterwards, handles will be recreated on demand.
+	 */
+	public void dispose() {
+
+		for (TessAPI.TessBaseAPI handle : handles.values()) {
+			API.TessBaseAPIEnd(handle);
+			API.TessBaseAPIDelete(handle);
+		}
+		handles.clear();
+		loadedSessions.clear();
+		idleBuffers.clear();
+	}
+
+	String recognize(OCRSession session, Rectangle area, int engineMode, int pageSegMode, boolean hOCR) throws RecognitionManagerException {
+
+		// Native recognition can't be interrupted, so cancelled work is stopped between the recognitions
+		if (Thread.interrupted()) throw new RecognitionManagerException("Recognition was interrupted");
+
+		TessAPI.TessBaseAPI handle = getHandle(engineMode);
+
+		if (loadedSessions.get(engineMode) != session) {
+			API.TessBaseAPISetImage(handle, session.getPixels(), session.getWidth(), session.getHeight(), 1, session.getWidth());
+			loadedSessions.put(engineMode, session);
+		}
+		API.TessBaseAPISetPageSegMode(handle, pageSegMode);
+		API.TessBaseAPISetRectangle(handle, area.x, area.y, area.width, area.height); // Also clears results of the previous recognition
+
+		return getText(handle, hOCR);
+	}
+	void release(OCRSession session) {
+
+		loadedSessions.entrySet().removeIf(entry -> {
+			if (entry.getValue() != session) return false;
+
+			API.TessBaseAPIClear(handles.get(entry.getKey())); // Frees the image and recognition results, trained data stays loaded
+			return true;
+		});
+		if (idleBuffers.size() < MAX_IDLE_BUFFERS) idleBuffers.add(session.getPixels());
+	}
+	/**
+	 * Packs the image into the 8 bit grayscale pixels in the format expected by TessBaseAPISetImage.
+	 * Grayscale images are copied row by row straight from their data buffer, subimages included. Other images are converted to grayscale first.
+	 *
+	 * @param image
+	 *
+	 * @return Buffer owned by the engine until the session using it is released.
+	 */
+	ByteBuffer pack(BufferedImage image) {
+
+		image = ImageHelper.toGray(image);
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ByteBuffer buffer = acquireBuffer(width * height);
+
+		Raster raster = image.getRaster();
+		ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+		DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+		byte[] data = dataBuffer.getData();
+		// Subimage shares the data buffer of the parent, its rows start at the translated offsets
+		int offset = dataBuffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+		int stride = sampleModel.getScanlineStride();
+
+		if (stride == width) buffer.put(data, offset, width * height);
+		else for (int y = 0; y < height; y++) buffer.put(data, offset + y * stride, width);
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * Returns the smallest idle buffer that fits the pixels. If none does, the biggest idle buffer is dropped in favor of the new one.
+	 *
+	 * @param size
+	 *
+	 * @return
+	 */
+	private ByteBuffer acquireBuffer(int size) {
+
+		ByteBuffer best = null;
+		ByteBuffer biggest = null;
+		for (ByteBuffer buffer : idleBuffers) {
+			if (buffer.capacity() >= size && (best == null || buffer.capacity() < best.capacity())) best = buffer;
+			if (biggest == null || buffer.capacity() > biggest.capacity()) biggest = buffer;
+		}
+
+		if (best != null) idleBuffers.remove(best);
+		else {
+			if (biggest != null) idleBuffers.remove(biggest);
+			best = ByteBuffer.allocateDirect(size);
+		}
+
+		best.clear();
+		return best;
+	}
+	private TessAPI.TessBaseAPI getHandle(int engineMode) throws RecognitionManagerException {
+
+		TessAPI.TessBaseAPI handle = handles.get(engineMode);
+
+		if (handle == null) {
+			handle = API.TessBaseAPICreate();
+			if (API.TessBaseAPIInit2(handle, dataPath, language, engineMode) != 0) {
+				API.TessBaseAPIDelete(handle);
+				throw new RecognitionManagerException("Can't initialize Tesseract (engine mode " + engineMode + "). Check if tessdata path is specified correctly and proper language files are present");
+			}
+
+			handles.put(engineMode, handle);
+		}
+
+		return handle;
+	}
+	private static String getText(TessAPI.TessBaseAPI handle, boolean hOCR) throws RecognitionManagerException {
+
+		Pointer text = hOCR ? API.TessBaseAPIGetHOCRText(handle, 0) : API.TessBaseAPIGetUTF8Text(handle);
+		if (text == null) throw new RecognitionManagerException("Tesseract failed to recognize the image");
+
+		try {
+			return text.getString(0);
+		} finally {
+			API.TessDeleteText(text);
+		}
+	}
+}
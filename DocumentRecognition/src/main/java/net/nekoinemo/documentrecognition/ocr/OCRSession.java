@@ -0,0 +1,87 @@
+package net.nekoinemo.documentrecognition.ocr;
+
+import net.nekoinemo.documentrecognition.RecognitionManagerException;
+import net.nekoinemo.documentrecognition.RecognitionSettings;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Image uploaded to the OCREngine once, which then can be recognized any number of times with different areas and settings.
+ * Pixels are passed to Tesseract only on the first recognition with each engine mode, then only the recognition rectangle changes.
+ * Session belongs to the engine (and therefore thread) that opened it and should be closed when no longer needed.
+ */
+public class OCRSession implements AutoCloseable {
+
+	private final OCREngine engine;
+	private final ByteBuffer pixels;
+	private final int width;
+	private final int height;
+	private boolean closed = false;
+
+	OCRSession(OCREngine engine, BufferedImage image) {
+
+		this.engine = engine;
+		this.pixels = engine.pack(image);
+		this.width = image.getWidth();
+		this.height = image.getHeight();
+	}
+
+	public int getWidth() {
+
+		return width;
+	}
+	public int getHeight() {
+
+		return height;
+	}
+	ByteBuffer getPixels() {
+
+		return pixels;
+	}
+
+	/**
+	 * Recognizes the area of the image and returns the result in the hOCR format (see http://en.wikipedia.org/wiki/HOCR).
+	 *
+	 * @param area                Area of the image to recognize. If null - the whole image is recognized.
+	 * @param recognitionSettings
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	public String recognize(Rectangle area, RecognitionSettings recognitionSettings) throws RecognitionManagerException {
+
+		return recognize(area, recognitionSettings.getEngineMode(), recognitionSettings.getPageSegMode(), true);
+	}
+	/**
+	 * Recognizes the area of the image.
+	 *
+	 * @param area        Area of the image to recognize. If null - the whole image is recognized.
+	 * @param engineMode
+	 * @param pageSegMode
+	 * @param hOCR        If true - result is returned in the hOCR format, otherwise as a plain text.
+	 *
+	 * @return
+	 *
+	 * @throws RecognitionManagerException
+	 */
+	public String recognize(Rectangle area, int engineMode, int pageSegMode, boolean hOCR) throws RecognitionManagerException {
+
+		if (closed) throw new RecognitionManagerException("OCR session is closed");
+
+		return engine.recognize(this, area == null ? new Rectangle(0, 0, width, height) : area, engineMode, pageSegMode, hOCR);
+	}
+	/**
+	 * Releases the image from the engine handles.
+	 */
+	@Override
+	public void close() {
+
+		if (closed) return;
+
+		closed = true;
+		engine.release(this);
+	}
+}
@@ -2,6 +2,7 @@ package net.nekoinemo.documentrecognition.processing;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.function.UnaryOperator;
 
 public class ImageHelper {
 
@@ -19,6 +20,24 @@ public class ImageHelper {
 
 		return result;
 	}
+	/**
+	 * Converts the image to the 8 bit grayscale, the form page rasters are kept in. Grayscale images are returned as is.
+	 *
+	 * @param image
+	 *
+	 * @return
+	 */
+	public static BufferedImage toGray(BufferedImage image) {
+
+		if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) return image;
+
+		BufferedImage grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D graphics2D = grayImage.createGraphics();
+		graphics2D.drawImage(image, 0, 0, null);
+		graphics2D.dispose();
+
+		return grayImage;
+	}
 	public static BufferedImage deskewImage(BufferedImage image) {
 
 		return deskewImage(image, image.getWidth() / 2, image.getHeight() / 2);
@@ -28,6 +47,36 @@ public class ImageHelper {
 		double skewAngle = Deskew.getSkewAngle(image);
 		return Deskew.rotate(image, skewAngle, centerX, centerY);
 	}
+	/**
+	 * Returns the deskewing which measures the skew angle on the first image it's applied to and rotates every following image by that angle.
+	 * Renditions of the same page at different scales are rotated alike then, so the coordinates found on one of them can be scaled onto another.
+	 *
+	 * @return
+	 */
+	public static UnaryOperator<BufferedImage> deskewing() {
+
+		return new UnaryOperator<BufferedImage>() {
+
+			private Double skewAngle = null;
+
+			@Override
+			public synchronized BufferedImage apply(BufferedImage image) {
+
+				if (skewAngle == null) skewAngle = Deskew.getSkewAngle(image);
+				return Deskew.rotate(image, skewAngle, image.getWidth() / 2, image.getHeight() / 2);
+			}
+		};
+	}
+	public static BufferedImage flipHorizontally(BufferedImage image) {
+
+		BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+		Graphics2D graphics2D = result.createGraphics();
+
+		graphics2D.drawImage(image, image.getWidth(), 0, -image.getWidth(), image.getHeight(), null);
+		graphics2D.dispose();
+
+		return result;
+	}
 	public static BufferedImage rotate(BufferedImage image, int angle) {
 
 		if (angle % 360 == 0) return image;
@@ -0,0 +1,246 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+/**
+ * Decodes a single image file or image data held in memory to the 8 bit grayscale. Image is decoded on demand,
+ * reduced renditions are decoded with the source subsampling, so only every n-th pixel of every n-th row is read.
+ */
+public class ImagePageRasterizer implements PageRasterizer {
+
+	private static final int EXIF_TAG_ORIENTATION = 0x0112;
+
+	private final File file;
+	private final ByteBuffer data;
+	private final String mimeType;
+	private final int exifOrientation;
+
+	/**
+	 * @param file
+	 *
+	 * @throws IOException if file can't be read or its format isn't supported.
+	 */
+	public ImagePageRasterizer(File file) throws IOException {
+
+		this(file, null, null);
+	}
+	/**
+	 * @param data     Content of the image file. Buffer isn't copied and its position isn't changed.
+	 * @param mimeType MIME type of the data. If null - format is detected by ImageIO.
+	 *
+	 * @throws IOException if data can't be read or its format isn't supported.
+	 */
+	public ImagePageRasterizer(ByteBuffer data, String mimeType) throws IOException {
+
+		this(null, data.duplicate(), mimeType);
+	}
+	private ImagePageRasterizer(File file, ByteBuffer data, String mimeType) throws IOException {
+
+		this.file = file;
+		this.data = data;
+		this.mimeType = mimeType;
+
+		// Only the header is read to check that the format is supported, along with the orientation of the JPEG files
+		try (ImageInputStream stream = openStream()) {
+			exifOrientation = readExifOrientation(stream);
+			stream.seek(0);
+
+			ImageReader reader = getReader(stream);
+			try {
+				reader.getWidth(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	@Override
+	public int getPageCount() {
+
+		return 1;
+	}
+	@Override
+	public BufferedImage renderPage(int index) throws IOException {
+
+		return renderPage(index, 1f);
+	}
+	@Override
+	public BufferedImage renderPage(int index, float scale) throws IOException {
+
+		int subsampling = getSubsampling(scale);
+
+		try (ImageInputStream stream = openStream()) {
+			ImageReader reader = getReader(stream);
+			try {
+				ImageReadParam param = reader.getDefaultReadParam();
+				if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+				// Grayscale sources are decoded straight to the grayscale raster, others are converted after decoding
+				Iterator<ImageTypeSpecifier> types = reader.getImageTypes(index);
+				while (types.hasNext()) {
+					ImageTypeSpecifier type = types.next();
+					if (type.getBufferedImageType() == BufferedImage.TYPE_BYTE_GRAY) {
+						param.setDestinationType(type);
+						break;
+					}
+				}
+
+				return applyExifOrientation(ImageHelper.toGray(reader.read(index, param)));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+	@Override
+	public float getRenditionScale(float scale) {
+
+		return 1f / getSubsampling(scale);
+	}
+	/**
+	 * Orientation is known if the image has the EXIF orientation tag. Decoded image is already turned upright according to it.
+	 *
+	 * @param index
+	 *
+	 * @return
+	 */
+	@Override
+	public boolean isOrientationKnown(int index) {
+
+		return exifOrientation != 0;
+	}
+	@Override
+	public String getTextLayer(int index) {
+
+		return null;
+	}
+	@Override
+	public void close() {}
+
+	private int getSubsampling(float scale) {
+
+		return scale >= 1f ? 1 : Math.max(1, (int) (1f / scale)); // Rounded down, so rendition is never smaller than requested
+	}
+	/**
+	 * Turns the image upright according to the EXIF orientation tag (1 - upright, 2..8 - rotated and/or mirrored).
+	 *
+	 * @param image
+	 *
+	 * @return
+	 */
+	private BufferedImage applyExifOrientation(BufferedImage image) {
+
+		switch (exifOrientation) {
+			case 2:
+				return ImageHelper.flipHorizontally(image);
+			case 3:
+				return ImageHelper.rotate(image, 180);
+			case 4:
+				return ImageHelper.rotate(ImageHelper.flipHorizontally(image), 180);
+			case 5:
+				return ImageHelper.rotate(ImageHelper.flipHorizontally(image), 270);
+			case 6:
+				return ImageHelper.rotate(image, 90);
+			case 7:
+				return ImageHelper.rotate(ImageHelper.flipHorizontally(image), 90);
+			case 8:
+				return ImageHelper.rotate(image, 270);
+			default:
+				return image;
+		}
+	}
+	/**
+	 * Finds the orientation tag in the first IFD of the EXIF segment (APP1) of the JPEG file. Segments are scanned directly,
+	 * ImageIO metadata isn't used as it rejects the files having both JFIF and EXIF segments in the "wrong" order.
+	 *
+	 * @param stream
+	 *
+	 * @return Value of the tag or 0 if there is none or the file isn't JPEG.
+	 *
+	 * @throws IOException
+	 */
+	private static int readExifOrientation(ImageInputStream stream) throws IOException {
+
+		stream.setByteOrder(ByteOrder.BIG_ENDIAN);
+		try {
+			if (stream.readUnsignedShort() != 0xFFD8) return 0; // Not a JPEG file
+
+			while (true) {
+				int marker = stream.readUnsignedShort();
+				if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA) return 0; // Image data starts, metadata segments are before it
+
+				int length = stream.readUnsignedShort() - 2;
+				if (length < 0) return 0;
+				if (marker != 0xFFE1 || length < 14) {
+					stream.skipBytes(length);
+					continue;
+				}
+
+				byte[] segment = new byte[length];
+				stream.readFully(segment);
+				if (segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') continue;
+
+				// TIFF structure follows the "Exif\0\0" header: byte order, magic number, offset of the first IFD
+				ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+				tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+				try {
+					int ifdOffset = tiff.getInt(4);
+					int entryCount = tiff.getShort(ifdOffset) & 0xFFFF;
+					for (int entry = 0; entry < entryCount; entry++) {
+						int entryOffset = ifdOffset + 2 + entry * 12;
+						if ((tiff.getShort(entryOffset) & 0xFFFF) == EXIF_TAG_ORIENTATION) {
+							int orientation = tiff.getShort(entryOffset + 8) & 0xFFFF;
+							return orientation >= 1 && orientation <= 8 ? orientation : 0;
+						}
+					}
+				} catch (IndexOutOfBoundsException e) {
+					return 0; // Damaged segment
+				}
+
+				return 0;
+			}
+		} catch (EOFException e) {
+			return 0;
+		}
+	}
+	private ImageInputStream openStream() throws IOException {
+
+		ImageInputStream stream = file != null ? ImageIO.createImageInputStream(file) : ImageIO.createImageInputStream(toInputStream(data));
+		if (stream == null) throw new IOException("Can't open image " + (file != null ? file.getName() : "data"));
+
+		return stream;
+	}
+	private ImageReader getReader(ImageInputStream stream) throws IOException {
+
+		Iterator<ImageReader> readers = mimeType != null ? ImageIO.getImageReadersByMIMEType(mimeType) : ImageIO.getImageReaders(stream);
+		if (!readers.hasNext()) throw new IOException(mimeType != null ? "Unsupported MIME type " + mimeType : "Unsupported image format" + (file != null ? " of " + file.getName() : ""));
+
+		ImageReader reader = readers.next();
+		reader.setInput(stream, true, true);
+
+		return reader;
+	}
+	/**
+	 * Wraps the buffer without copying when it's backed by an accessible array.
+	 */
+	private static InputStream toInputStream(ByteBuffer data) {
+
+		if (data.hasArray()) return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+
+		byte[] copy = new byte[data.remaining()];
+		data.duplicate().get(copy);
+		return new ByteArrayInputStream(copy);
+	}
+}
@@ -0,0 +1,205 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import net.nekoinemo.documentrecognition.document.DocumentType;
+import net.nekoinemo.documentrecognition.processing.math.Line;
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * Determines the document type from the page layout, without OCR. Requires OpenCV libraries (see OpenCVHelper.loadOpenCVLibs()).
+ * MOM documents are ruled tables: many long lines along the page, crossed by a few lines across it. Work permits are one or two cards on a mostly blank page.
+ * Page is fingerprinted at the reduced size and only the unambiguous layouts are classified, so the rest is left to the OCR.
+ * Features don't depend on the page orientation.
+ */
+public class LayoutClassifier {
+
+	private static final int LAYOUT_SIZE = 1000; // Pages are downscaled to this size, lines and cards are still clearly visible
+	// MOM
+	private static final float MIN_LINE_LENGTH = 0.3f; // Fraction of the page side
+	private static final int MIN_TABLE_ROWS = 6; // Lines along the table
+	private static final int MIN_TABLE_COLUMNS = 2; // Lines across the table
+	// Work permit
+	private static final float MIN_CARD_AREA = 0.03f; // Fraction of the page area
+	private static final float MAX_CARD_AREA = 0.45f;
+	private static final float CARD_ASPECT_RATIO = 1.586f; // ID-1 card
+	private static final float CARD_ASPECT_TOLERANCE = 0.2f;
+	private static final float MIN_CARD_RECTANGULARITY = 0.85f; // Area of the contour relative to its bounding rectangle
+	private static final float MAX_INK_OUTSIDE_CARDS = 0.02f; // Fraction of the page area outside the cards
+
+	/**
+	 * @param image
+	 *
+	 * @return Document type or null if layout isn't typical for any type.
+	 */
+	public static DocumentType classify(BufferedImage image) {
+
+		return fingerprint(image).getDocumentType();
+	}
+	/**
+	 * Measures the layout features of the page.
+	 *
+	 * @param image
+	 *
+	 * @return
+	 */
+	public static Fingerprint fingerprint(BufferedImage image) {
+
+		Mat page = toMat(ImageHelper.toGray(image));
+		double scale = Math.min(1d, (double) LAYOUT_SIZE / Math.max(page.width(), page.height()));
+		if (scale < 1d) {
+			Mat scaled = new Mat();
+			Imgproc.resize(page, scaled, new Size(Math.round(page.width() * scale), Math.round(page.height() * scale)), 0, 0, Imgproc.INTER_AREA);
+			page.release();
+			page = scaled;
+		}
+
+		Mat inverted = new Mat();
+		Core.bitwise_not(page, inverted);
+		page.release();
+
+		Fingerprint fingerprint = new Fingerprint();
+		fingerprint.horizontalLines = countLongLines(inverted, OpenCVHelper.HORIZONTAL);
+		fingerprint.verticalLines = countLongLines(inverted, OpenCVHelper.VERTICAL);
+		findCards(inverted, fingerprint);
+		inverted.release();
+
+		return fingerprint;
+	}
+
+	private static int countLongLines(Mat invertedImage, int orientation) {
+
+		double side = orientation == OpenCVHelper.HORIZONTAL ? invertedImage.width() : invertedImage.height();
+		ArrayList<Line> lines = OpenCVHelper.linesHV(invertedImage, orientation, (int) (side * MIN_LINE_LENGTH));
+
+		int count = 0;
+		for (Line line : lines) if (line.length() >= side * MIN_LINE_LENGTH) count++;
+
+		return count;
+	}
+	/**
+	 * Finds the card shaped contours and measures the ink outside of them.
+	 */
+	private static void findCards(Mat invertedImage, Fingerprint fingerprint) {
+
+		double pageArea = invertedImage.width() * invertedImage.height();
+
+		// Card edges can be faint on the white background, so the edges are searched instead of the dark regions
+		Mat edges = new Mat();
+		Imgproc.Canny(invertedImage, edges, 50, 150);
+		Imgproc.dilate(edges, edges, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3)));
+
+		ArrayList<MatOfPoint> contours = new ArrayList<>();
+		Imgproc.findContours(edges, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		edges.release();
+
+		Mat ink = new Mat();
+		Imgproc.threshold(invertedImage, ink, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+		for (MatOfPoint contour : contours) {
+			double area = Imgproc.contourArea(contour);
+			if (area >= pageArea * MIN_CARD_AREA && area <= pageArea * MAX_CARD_AREA) {
+				RotatedRect rectangle = Imgproc.minAreaRect(new MatOfPoint2f(contour.toArray()));
+				double longSide = Math.max(rectangle.size.width, rectangle.size.height);
+				double shortSide = Math.min(rectangle.size.width, rectangle.size.height);
+
+				if (shortSide > 0 && Math.abs(longSide / shortSide - CARD_ASPECT_RATIO) <= CARD_ASPECT_TOLERANCE && area >= rectangle.size.area() * MIN_CARD_RECTANGULARITY) {
+					fingerprint.cards++;
+					Imgproc.drawContours(ink, singleContour(contour), 0, new Scalar(0), Core.FILLED); // Card content isn't the ink outside of the cards
+				}
+			}
+			contour.release();
+		}
+
+		fingerprint.inkOutsideCards = (float) (Core.countNonZero(ink) / pageArea);
+		ink.release();
+	}
+	private static ArrayList<MatOfPoint> singleContour(MatOfPoint contour) {
+
+		ArrayList<MatOfPoint> contours = new ArrayList<>();
+		contours.add(contour);
+
+		return contours;
+	}
+	private static Mat toMat(BufferedImage grayImage) {
+
+		byte[] pixels = new byte[grayImage.getWidth() * grayImage.getHeight()];
+		grayImage.getRaster().getDataElements(0, 0, grayImage.getWidth(), grayImage.getHeight(), pixels);
+
+		Mat mat = new Mat(grayImage.getHeight(), grayImage.getWidth(), CvType.CV_8UC1);
+		mat.put(0, 0, pixels);
+
+		return mat;
+	}
+
+	/**
+	 * Layout features of the page.
+	 */
+	public static class Fingerprint {
+
+		private int horizontalLines = 0;
+		private int verticalLines = 0;
+		private int cards = 0;
+		private float inkOutsideCards = 0f;
+
+		private Fingerprint() {}
+
+		/**
+		 * Returns the number of the horizontal lines spanning at least 30% of the page width.
+		 *
+		 * @return
+		 */
+		public int getHorizontalLines() {
+
+			return horizontalLines;
+		}
+		/**
+		 * Returns the number of the vertical lines spanning at least 30% of the page height.
+		 *
+		 * @return
+		 */
+		public int getVerticalLines() {
+
+			return verticalLines;
+		}
+		/**
+		 * Returns the number of the rectangular contours with the proportions of the ID-1 card.
+		 *
+		 * @return
+		 */
+		public int getCards() {
+
+			return cards;
+		}
+		/**
+		 * Returns the fraction of the page area outside of the cards covered by ink.
+		 *
+		 * @return
+		 */
+		public float getInkOutsideCards() {
+
+			return inkOutsideCards;
+		}
+		/**
+		 * @return Document type or null if layout isn't typical for any type.
+		 */
+		public DocumentType getDocumentType() {
+
+			int rows = Math.max(horizontalLines, verticalLines);
+			int columns = Math.min(horizontalLines, verticalLines);
+			boolean isTable = rows >= MIN_TABLE_ROWS && columns >= MIN_TABLE_COLUMNS;
+			boolean isCardPage = cards > 0 && inkOutsideCards <= MAX_INK_OUTSIDE_CARDS;
+
+			if (isTable && !isCardPage) return DocumentType.MOM;
+			if (isCardPage && !isTable) return DocumentType.WORK_PERMIT;
+
+			return null;
+		}
+		@Override
+		public String toString() {
+
+			return "Fingerprint{horizontalLines=" + horizontalLines + ", verticalLines=" + verticalLines + ", cards=" + cards + ", inkOutsideCards=" + inkOutsideCards + '}';
+		}
+	}
+}
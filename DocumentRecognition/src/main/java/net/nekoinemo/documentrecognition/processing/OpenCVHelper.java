@@ -22,15 +22,19 @@ public class OpenCVHelper {
 	public static int HORIZONTAL = 0;
 	public static int VERTICAL = 1;
 
+	private static boolean isLoaded = false;
+
 	/**
 	 * Extracts and Loads OpenCV libraries from resources.
-	 * Linux and Mac OS libraries are loaded from OpenCV jar, Win libraries are loaded from this jar.
+	 * Linux and Mac OS libraries are loaded from OpenCV jar, Win libraries are loaded from this jar. Libraries are loaded only once.
 	 *
 	 * @throws IOException
 	 * @throws IllegalAccessException
 	 * @throws NoSuchFieldException
 	 */
-	public static void loadOpenCVLibs() throws IOException, IllegalAccessException, NoSuchFieldException {
+	public static synchronized void loadOpenCVLibs() throws IOException, IllegalAccessException, NoSuchFieldException {
+
+		if (isLoaded) return;
 
 		// Load OpenCV library
 		if (Platform.isWindows()) {
@@ -50,6 +54,8 @@ public class OpenCVHelper {
 		} else {
 			OpenCV.loadLibrary();
 		}
+
+		isLoaded = true;
 	}
 
 	/**
@@ -0,0 +1,239 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Estimates the orientation of the text on the page from the projection profiles of the binarized page, without OCR.
+ * Gaps between the text lines are empty across the whole page, while gaps between the characters of the different lines don't line up. So the profile across the lines has many empty entries and the profile along them has few. This tells the horizontal text from the vertical one.
+ * Upright Latin text has more ink above its x-height band (capitals and ascenders) than below it (descenders), this tells the upright text from the upside down one.
+ */
+public class OrientationEstimator {
+
+	public static final float DEFAULT_MIN_CONFIDENCE = 0.25f;
+
+	private static final int MAX_SIZE = 1000; // Pages are subsampled down to this size, it's enough to see the text lines
+	private static final int MIN_LINE_HEIGHT = 4;
+
+	/**
+	 * @param image
+	 *
+	 * @return Angle the image should be rotated clockwise by (see ImageHelper.rotate()) to make the text upright, with the confidence of the estimate.
+	 */
+	public static Estimate estimate(BufferedImage image) {
+
+		InkMap inkMap = InkMap.of(image);
+		if (inkMap.inkCount == 0) return new Estimate(0, 0f);
+
+		// Text lines run along the axis which profile has more gaps
+		float rowGaps = gapFraction(inkMap.rowProfile(), inkMap.width);
+		float columnGaps = gapFraction(inkMap.columnProfile(), inkMap.height);
+		if (rowGaps + columnGaps == 0) return new Estimate(0, 0f);
+
+		boolean horizontal = rowGaps >= columnGaps;
+		float axisConfidence = Math.abs(rowGaps - columnGaps) / (rowGaps + columnGaps);
+
+		if (!horizontal) inkMap = inkMap.rotate90();
+		float uprightScore = uprightScore(inkMap);
+
+		int angle = (horizontal ? 0 : 90) + (uprightScore >= 0 ? 0 : 180);
+		return new Estimate(angle, Math.min(axisConfidence, Math.abs(uprightScore)));
+	}
+
+	/**
+	 * Returns the fraction of the (nearly) empty entries between the first and the last inked one.
+	 *
+	 * @param profile
+	 * @param length  Length of the lines the profile was summed along.
+	 */
+	private static float gapFraction(int[] profile, int length) {
+
+		int threshold = Math.max(1, length / 200); // Tolerates the specks of noise
+		int first = 0;
+		int last = profile.length - 1;
+		while (first <= last && profile[first] <= threshold) first++;
+		while (last >= first && profile[last] <= threshold) last--;
+		if (first >= last) return 0f;
+
+		int gaps = 0;
+		for (int i = first; i <= last; i++) if (profile[i] <= threshold) gaps++;
+
+		return (float) gaps / (last - first + 1);
+	}
+	/**
+	 * Compares the ink above and below the x-height band of every text line.
+	 *
+	 * @return Value in [-1, 1]. Positive if text is upright.
+	 */
+	private static float uprightScore(InkMap inkMap) {
+
+		int[] rows = inkMap.rowProfile();
+		int lineThreshold = Math.max(1, inkMap.width / 200); // Rows with less ink are the gaps between the lines
+
+		long above = 0;
+		long below = 0;
+		int start = -1;
+		for (int y = 0; y <= rows.length; y++) {
+			boolean isText = y < rows.length && rows[y] > lineThreshold;
+			if (isText && start < 0) start = y;
+			if (isText || start < 0) continue;
+
+			int end = y; // Line is [start, end)
+			if (end - start >= MIN_LINE_HEIGHT) {
+				int max = 0;
+				for (int i = start; i < end; i++) max = Math.max(max, rows[i]);
+
+				// X-height band is where most of the line's ink is
+				int coreStart = start;
+				int coreEnd = end - 1;
+				while (rows[coreStart] < max * 0.4) coreStart++;
+				while (rows[coreEnd] < max * 0.4) coreEnd--;
+
+				for (int i = start; i < coreStart; i++) above += rows[i];
+				for (int i = coreEnd + 1; i < end; i++) below += rows[i];
+			}
+			start = -1;
+		}
+
+		return above + below > 0 ? (float) (above - below) / (above + below) : 0f;
+	}
+
+	/**
+	 * Orientation of the page.
+	 */
+	public static class Estimate {
+
+		private final int angle;
+		private final float confidence;
+
+		private Estimate(int angle, float confidence) {
+
+			this.angle = angle;
+			this.confidence = confidence;
+		}
+
+		/**
+		 * @return 0, 90, 180 or 270.
+		 */
+		public int getAngle() {
+
+			return angle;
+		}
+		/**
+		 * @return Value in [0, 1].
+		 */
+		public float getConfidence() {
+
+			return confidence;
+		}
+		public boolean isConfident(float minConfidence) {
+
+			return confidence >= minConfidence;
+		}
+	}
+
+	/**
+	 * Subsampled page where dark pixels are marked as ink.
+	 */
+	private static class InkMap {
+
+		private final boolean[] ink;
+		private final int width;
+		private final int height;
+		private final int inkCount;
+
+		private InkMap(boolean[] ink, int width, int height) {
+
+			this.ink = ink;
+			this.width = width;
+			this.height = height;
+
+			int count = 0;
+			for (boolean pixel : ink) if (pixel) count++;
+			this.inkCount = count;
+		}
+
+		private static InkMap of(BufferedImage image) {
+
+			int step = Math.max(1, (Math.max(image.getWidth(), image.getHeight()) + MAX_SIZE - 1) / MAX_SIZE);
+			int width = image.getWidth() / step;
+			int height = image.getHeight() / step;
+
+			// Gray levels of the samples, color images are reduced to the luminance
+			Raster raster = image.getRaster();
+			boolean isGray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+			int[] levels = new int[width * height];
+			int[] histogram = new int[256];
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int level;
+					if (isGray) level = raster.getSample(x * step, y * step, 0);
+					else {
+						int rgb = image.getRGB(x * step, y * step);
+						level = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+					}
+					levels[y * width + x] = level;
+					histogram[level]++;
+				}
+			}
+
+			int threshold = otsuThreshold(histogram, levels.length);
+			boolean[] ink = new boolean[levels.length];
+			for (int i = 0; i < levels.length; i++) ink[i] = levels[i] < threshold;
+
+			return new InkMap(ink, width, height);
+		}
+		private static int otsuThreshold(int[] histogram, int total) {
+
+			long sum = 0;
+			for (int i = 0; i < 256; i++) sum += (long) i * histogram[i];
+
+			long darkSum = 0;
+			int darkCount = 0;
+			double bestVariance = -1;
+			int threshold = 128;
+			for (int i = 0; i < 256; i++) {
+				darkCount += histogram[i];
+				if (darkCount == 0) continue;
+				int lightCount = total - darkCount;
+				if (lightCount == 0) break;
+
+				darkSum += (long) i * histogram[i];
+				double darkMean = (double) darkSum / darkCount;
+				double lightMean = (double) (sum - darkSum) / lightCount;
+				double variance = (double) darkCount * lightCount * (darkMean - lightMean) * (darkMean - lightMean);
+				if (variance > bestVariance) {
+					bestVariance = variance;
+					threshold = i + 1;
+				}
+			}
+
+			return threshold;
+		}
+
+		private int[] rowProfile() {
+
+			int[] profile = new int[height];
+			for (int y = 0; y < height; y++) for (int x = 0; x < width; x++) if (ink[y * width + x]) profile[y]++;
+
+			return profile;
+		}
+		private int[] columnProfile() {
+
+			int[] profile = new int[width];
+			for (int y = 0; y < height; y++) for (int x = 0; x < width; x++) if (ink[y * width + x]) profile[x]++;
+
+			return profile;
+		}
+		/**
+		 * Rotates the map clockwise, same as ImageHelper.rotate(image, 90).
+		 */
+		private InkMap rotate90() {
+
+			boolean[] rotated = new boolean[ink.length];
+			for (int y = 0; y < height; y++) for (int x = 0; x < width; x++) rotated[x * height + (height - 1 - y)] = ink[y * width + x];
+
+			return new InkMap(rotated, height, width);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Source of the page rasters of a multi-page document. Pages are rendered on demand, one at a time.
+ * Implementations should allow rendering different pages from several threads at once.
+ */
+public interface PageRasterizer extends AutoCloseable {
+
+	int getPageCount();
+	/**
+	 * Renders the page.
+	 *
+	 * @param index Zero based index of the page.
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	BufferedImage renderPage(int index) throws IOException;
+	/**
+	 * Renders the reduced rendition of the page. Reduced rendition is produced by the source (lower DPI, subsampled decoding), not by downscaling the full one.
+	 *
+	 * @param index Zero based index of the page.
+	 * @param scale Requested scale relative to the full rendition, (0, 1].
+	 *
+	 * @return Rendition at the scale returned by getRenditionScale().
+	 *
+	 * @throws IOException
+	 */
+	BufferedImage renderPage(int index, float scale) throws IOException;
+	/**
+	 * Returns the scale the rendition is actually produced at for the requested scale.
+	 *
+	 * @param scale
+	 *
+	 * @return
+	 */
+	float getRenditionScale(float scale);
+	/**
+	 * Returns whenever the document specifies the orientation of the page (e.g. EXIF orientation tag, PDF page rotation).
+	 * Page is rendered already turned according to it, so it doesn't need to be searched for.
+	 *
+	 * @param index Zero based index of the page.
+	 *
+	 * @return
+	 */
+	boolean isOrientationKnown(int index);
+	/**
+	 * Returns the text the document contains as text rather than as the image, e.g. text layer of the digitally generated PDF.
+	 *
+	 * @param index Zero based index of the page.
+	 *
+	 * @return Text in the hOCR format with the coordinates on the full rendition of the page, or null if page has no usable text.
+	 *
+	 * @throws IOException
+	 */
+	String getTextLayer(int index) throws IOException;
+	/**
+	 * Releases the document. Pages can't be rendered afterwards.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,137 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Renders PDF pages in process with PDFBox.
+ * Pages are rendered straight to the 8 bit grayscale, the form OCR takes them in.
+ * PDDocument isn't thread safe, so every thread rendering at the same time gets its own copy of the document. Copies are loaded on demand and reused afterwards.
+ */
+public class PdfPageRasterizer implements PageRasterizer {
+
+	public static final int DEFAULT_DPI = 300;
+
+	private final File file;
+	private final byte[] data;
+	private final float dpi;
+	private final int pageCount;
+	private final boolean[] rotatedPages; // Pages having the /Rotate attribute, PDFRenderer applies it
+	private final ConcurrentLinkedQueue<PDDocument> idleDocuments = new ConcurrentLinkedQueue<>();
+	private final ArrayList<PDDocument> documents = new ArrayList<>(); // All loaded copies, closed together
+	private boolean closed = false;
+
+	public PdfPageRasterizer(File file, float dpi) throws IOException {
+
+		this(file, null, dpi);
+	}
+	public PdfPageRasterizer(byte[] data, float dpi) throws IOException {
+
+		this(null, data, dpi);
+	}
+	private PdfPageRasterizer(File file, byte[] data, float dpi) throws IOException {
+
+		this.file = file;
+		this.data = data;
+		this.dpi = dpi;
+
+		PDDocument document = load();
+		pageCount = document.getNumberOfPages();
+		rotatedPages = new boolean[pageCount];
+		for (int i = 0; i < pageCount; i++) rotatedPages[i] = document.getPage(i).getRotation() % 360 != 0;
+		idleDocuments.add(document);
+	}
+
+	@Override
+	public int getPageCount() {
+
+		return pageCount;
+	}
+	public float getDpi() {
+
+		return dpi;
+	}
+	@Override
+	public BufferedImage renderPage(int index) throws IOException {
+
+		return renderPage(index, 1f);
+	}
+	@Override
+	public BufferedImage renderPage(int index, float scale) throws IOException {
+
+		PDDocument document = idleDocuments.poll();
+		if (document == null) document = load();
+
+		try {
+			return new PDFRenderer(document).renderImageWithDPI(index, dpi * getRenditionScale(scale), ImageType.GRAY);
+		} finally {
+			idleDocuments.add(document);
+		}
+	}
+	@Override
+	public float getRenditionScale(float scale) {
+
+		return Math.min(scale, 1f); // Page is rendered at the lower DPI
+	}
+	/**
+	 * Orientation is known if the page has the non-zero /Rotate attribute, which is set deliberately (e.g. by the scanner software).
+	 * Zero is the default and tells nothing about the orientation of the scanned content.
+	 *
+	 * @param index
+	 *
+	 * @return
+	 */
+	@Override
+	public boolean isOrientationKnown(int index) {
+
+		return rotatedPages[index];
+	}
+	@Override
+	public String getTextLayer(int index) throws IOException {
+
+		PDDocument document = idleDocuments.poll();
+		if (document == null) document = load();
+
+		try {
+			return PdfTextLayer.extract(document, index, dpi);
+		} finally {
+			idleDocuments.add(document);
+		}
+	}
+	@Override
+	public void close() {
+
+		synchronized (documents) {
+			closed = true;
+			for (PDDocument document : documents) {
+				try {
+					document.close();
+				} catch (IOException e) {}
+			}
+			documents.clear();
+		}
+		idleDocuments.clear();
+	}
+
+	private PDDocument load() throws IOException {
+
+		synchronized (documents) {
+			if (closed) throw new IOException("Rasterizer is closed");
+
+			// Parsed objects are kept in memory, scratch data of the big documents goes to the temporary files
+			MemoryUsageSetting memoryUsage = MemoryUsageSetting.setupMixed(16 * 1024 * 1024);
+			PDDocument document = file != null ? PDDocument.load(file, memoryUsage) : PDDocument.load(data, "", null, null, memoryUsage);
+			documents.add(document);
+
+			return document;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts the text layer of a PDF page to hOCR, with the same line and word structure Tesseract produces, so the text can be used instead of OCR.
+ * Coordinates are in the pixels of the page rendered at the given DPI.
+ */
+class PdfTextLayer extends PDFTextStripper {
+
+	private static final int MIN_CHARACTERS = 20; // Pages with less text are most likely scans with a few stamps or annotations
+	private static final float MIN_ALPHANUMERIC_FRACTION = 0.5f; // Fonts without the Unicode mapping produce symbols instead of text
+
+	private final float scale;
+	private final StringBuilder hOCR = new StringBuilder();
+	private final List<String> words = new ArrayList<>(); // Words of the current line, as hOCR
+	private float lineX0, lineY0, lineX1, lineY1;
+	private int characterCount = 0;
+	private int alphanumericCount = 0;
+
+	private PdfTextLayer(float dpi) throws IOException {
+
+		this.scale = dpi / 72f; // PDF units are points
+		setSortByPosition(true); // Same reading order as the OCR
+	}
+
+	/**
+	 * @param document
+	 * @param index    Zero based index of the page.
+	 * @param dpi      Resolution the page is rendered at.
+	 *
+	 * @return hOCR of the page or null if page has no usable text layer.
+	 *
+	 * @throws IOException
+	 */
+	static String extract(PDDocument document, int index, float dpi) throws IOException {
+
+		PDPage page = document.getPage(index);
+		if (page.getRotation() % 360 != 0) return null; // Text positions wouldn't match the rotated rendering
+
+		PdfTextLayer textLayer = new PdfTextLayer(dpi);
+		textLayer.setStartPage(index + 1);
+		textLayer.setEndPage(index + 1);
+		textLayer.writeText(document, new StringWriter());
+
+		if (textLayer.characterCount < MIN_CHARACTERS || textLayer.alphanumericCount < textLayer.characterCount * MIN_ALPHANUMERIC_FRACTION) return null;
+
+		int width = Math.round(page.getCropBox().getWidth() * textLayer.scale);
+		int height = Math.round(page.getCropBox().getHeight() * textLayer.scale);
+		return "<div class='ocr_page' title='bbox 0 0 " + width + ' ' + height + "'>" + textLayer.hOCR + "</div>";
+	}
+
+	@Override
+	protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+
+		if (textPositions.isEmpty() || text.trim().isEmpty()) return;
+
+		float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE, x1 = 0, y1 = 0;
+		for (TextPosition position : textPositions) {
+			x0 = Math.min(x0, position.getXDirAdj());
+			x1 = Math.max(x1, position.getXDirAdj() + position.getWidthDirAdj());
+			y0 = Math.min(y0, position.getYDirAdj() - position.getHeightDir()); // Y is the baseline
+			y1 = Math.max(y1, position.getYDirAdj());
+		}
+
+		if (words.isEmpty()) {
+			lineX0 = x0;
+			lineY0 = y0;
+			lineX1 = x1;
+			lineY1 = y1;
+		} else {
+			lineX0 = Math.min(lineX0, x0);
+			lineY0 = Math.min(lineY0, y0);
+			lineX1 = Math.max(lineX1, x1);
+			lineY1 = Math.max(lineY1, y1);
+		}
+		words.add("<span class='ocrx_word' title='" + bbox(x0, y0, x1, y1) + "'>" + escape(text) + "</span>");
+
+		for (char character : text.toCharArray()) {
+			if (Character.isWhitespace(character)) continue;
+
+			characterCount++;
+			if (Character.isLetterOrDigit(character)) alphanumericCount++;
+		}
+	}
+	@Override
+	protected void writeLineSeparator() throws IOException {
+
+		if (words.isEmpty()) return;
+
+		hOCR.append("<span class='ocr_line' title='").append(bbox(lineX0, lineY0, lineX1, lineY1)).append("'>").append(String.join(" ", words)).append("</span>\n");
+		words.clear();
+	}
+	@Override
+	protected void writePageEnd() throws IOException {
+
+		writeLineSeparator(); // Last line of the page isn't followed by the separator
+	}
+
+	private static String escape(String text) {
+
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+	private String bbox(float x0, float y0, float x1, float y1) {
+
+		return "bbox " + Math.round(x0 * scale) + ' ' + Math.round(y0 * scale) + ' ' + Math.round(x1 * scale) + ' ' + Math.round(y1 * scale);
+	}
+}
@@ -0,0 +1,123 @@
+package net.nekoinemo.documentrecognition;
+
+import net.nekoinemo.documentrecognition.document.DocumentType;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEvent;
+import net.nekoinemo.documentrecognition.event.RecognitionResultEventListener;
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RecognitionJournalTest extends TestCase {
+
+	private final RecognitionManager recognitionManager = new RecognitionManager("journalTest");
+	private File journalFile;
+
+	@Override
+	protected void setUp() throws IOException {
+
+		journalFile = File.createTempFile("journal", ".log");
+		journalFile.delete();
+	}
+	@Override
+	protected void tearDown() {
+
+		journalFile.delete();
+		new File(journalFile.getPath() + ".tmp").delete();
+	}
+
+	public void testReopen() throws IOException {
+
+		writeJournal();
+
+		assertJournal();
+	}
+	public void testTornRecord() throws IOException {
+
+		writeJournal();
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+			output.writeInt(100);
+			output.writeInt(0);
+			output.write(new byte[10]); // Crash in the middle of the payload
+		}
+
+		assertJournal();
+		assertJournal(); // Torn record was dropped by the compaction
+	}
+	public void testTornLength() throws IOException {
+
+		writeJournal();
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+			output.writeShort(0x7FFF); // Crash in the middle of the length
+		}
+
+		assertJournal();
+	}
+	public void testCorruptedLength() throws IOException {
+
+		writeJournal();
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+			output.writeInt(Integer.MAX_VALUE - 8); // Must not be allocated
+			output.writeInt(0);
+			output.write(new byte[16]);
+		}
+
+		assertJournal();
+	}
+	public void testCorruptedPayload() throws IOException {
+
+		writeJournal();
+		try (DataOutputStream output = new DataOutputStream(new FileOutputStream(journalFile, true))) {
+			output.writeInt(4);
+			output.writeInt(0); // Checksum doesn't match
+			output.write(new byte[]{ 1, 2, 3, 4 });
+		}
+
+		assertJournal();
+	}
+
+	/**
+	 * Journal with the completed file "a" and the unfinished files "b" and "c".
+	 */
+	private void writeJournal() throws IOException {
+
+		try (RecognitionJournal journal = new RecognitionJournal(journalFile)) {
+			journal.enqueued(new File("a.png"), "a");
+			journal.enqueued(new File("b.png"), "b");
+			journal.enqueued(new File("c.png"), "c");
+			journal.started(new File("a.png"));
+			journal.started(new File("b.png"));
+			journal.completed(new File("a.png"), new RecognitionResultEvent.RecognitionResultEventBuilder(recognitionManager, "a").setDocumentType(DocumentType.MOM).setRecognitionPercentage(75).getEvent());
+		}
+	}
+	private void assertJournal() throws IOException {
+
+		try (RecognitionJournal journal = new RecognitionJournal(journalFile)) {
+			assertEquals(Arrays.asList(new File("b.png").getAbsoluteFile(), new File("c.png").getAbsoluteFile()), journal.getUnfinishedFiles());
+			assertEquals(1, journal.getCompletedCount());
+
+			List<RecognitionResultEvent> events = new ArrayList<>();
+			assertEquals(1, journal.replay(recognitionManager, new RecognitionResultEventListener() {
+
+				@Override
+				public void recognitionFinished(RecognitionResultEvent event) {
+
+					events.add(event);
+				}
+				@Override
+				public void recognitionError(RecognitionResultEvent event) {
+
+					fail(event.getDocumentID() + " wasn't an error");
+				}
+			}));
+			assertEquals("a", events.get(0).getDocumentID());
+			assertEquals(DocumentType.MOM, events.get(0).getDocumentType());
+			assertEquals(75, events.get(0).getRecognitionPercentage());
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package net.nekoinemo.documentrecognition;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+
+public class RecognitionSchedulerTest extends TestCase {
+
+	private final RecognitionManager recognitionManager = new RecognitionManager("schedulerTest");
+
+	public void testDeadlineOrder() {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		scheduler.offer(target("late", RecognitionPriority.BATCH, 300));
+		scheduler.offer(target("none", RecognitionPriority.BATCH, 0));
+		scheduler.offer(target("early", RecognitionPriority.BATCH, 100));
+		scheduler.offer(target("middle", RecognitionPriority.BATCH, 200));
+
+		assertOrder(scheduler, "early", "middle", "late", "none");
+	}
+	public void testPushOrderWithoutDeadline() {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		for (int i = 0; i < 5; i++) scheduler.offer(target("t" + i, RecognitionPriority.BATCH, 0));
+
+		assertOrder(scheduler, "t0", "t1", "t2", "t3", "t4");
+	}
+	public void testInteractiveBeforeBatch() {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		scheduler.offer(target("batch", RecognitionPriority.BATCH, 100));
+		scheduler.offer(target("interactive", RecognitionPriority.INTERACTIVE, 0));
+
+		assertOrder(scheduler, "interactive", "batch");
+	}
+	public void testExpressBurstLetsBatchThrough() {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		scheduler.offer(target("batch", RecognitionPriority.BATCH, 0));
+		for (int i = 0; i < 10; i++) scheduler.offer(target("i" + i, RecognitionPriority.INTERACTIVE, 0));
+
+		assertOrder(scheduler, "i0", "i1", "i2", "i3", "i4", "i5", "i6", "i7", "batch", "i8", "i9");
+	}
+	public void testBatchWaitLimit() throws InterruptedException {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		scheduler.setBatchWaitLimit(1);
+		scheduler.offer(target("batch", RecognitionPriority.BATCH, 0));
+		Thread.sleep(5);
+		scheduler.offer(target("interactive", RecognitionPriority.INTERACTIVE, 0));
+
+		assertOrder(scheduler, "batch", "interactive");
+	}
+	public void testCapacity() {
+
+		RecognitionScheduler scheduler = new RecognitionScheduler();
+		scheduler.setCapacity(2);
+
+		assertTrue(scheduler.offer(target("a", RecognitionPriority.BATCH, 0)));
+		assertTrue(scheduler.offer(target("b", RecognitionPriority.INTERACTIVE, 0)));
+		assertFalse(scheduler.offer(target("c", RecognitionPriority.INTERACTIVE, 0)));
+		assertEquals(0, scheduler.remainingCapacity());
+
+		scheduler.poll();
+		assertTrue(scheduler.offer(target("c", RecognitionPriority.INTERACTIVE, 0)));
+	}
+	public void testQueueWaitIsSummedOverQueues() throws InterruptedException {
+
+		RecognitionScheduler first = new RecognitionScheduler();
+		RecognitionScheduler second = new RecognitionScheduler();
+		RecognitionManager.RecognitionTarget target = target("a", RecognitionPriority.BATCH, 0);
+
+		first.offer(target);
+		Thread.sleep(5);
+		first.poll();
+		second.offer(target);
+		Thread.sleep(5);
+		second.poll();
+
+		assertTrue(target.getQueueWait() >= 10000000L);
+		assertEquals(1, first.getQueueWaitStatistics(RecognitionPriority.BATCH).getCount());
+		assertEquals(1, second.getQueueWaitStatistics(RecognitionPriority.BATCH).getCount());
+	}
+
+	private RecognitionManager.RecognitionTarget target(String id, RecognitionPriority priority, long deadline) {
+
+		RecognitionOptions.RecognitionOptionsBuilder builder = new RecognitionOptions.RecognitionOptionsBuilder().setPriority(priority);
+		if (deadline > 0) builder.setDeadline(deadline);
+
+		return recognitionManager.new RecognitionTarget(id, new File(id + ".png"), null, builder.getOptions());
+	}
+	private static void assertOrder(RecognitionScheduler scheduler, String... ids) {
+
+		for (String id : ids) assertEquals(id, scheduler.poll().getId());
+		assertNull(scheduler.poll());
+	}
+}
@@ -0,0 +1,117 @@
+package net.nekoinemo.documentrecognition.document;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Classifier must give the same results as java.util.regex matching every pattern separately.
+ */
+public class DocumentClassifierTest extends TestCase {
+
+	private static final String[] SAMPLES = new String[]{
+			"",
+			"Foreign Worker",
+			"FOREIGN worker\nEmployment Details\nEmployer details",
+			"foreign\nworker", // Keywords on different lines
+			"employment\r\ndetails",
+			"employer\u2028details",
+			"employer\u2029details",
+			"employer\u0085details",
+			"Name of Employer and Name of worker",
+			"Name of worker", // Both patterns starting with "name"
+			"WPNo WP No",
+			"employerdetails details employer",
+			"workpermit", // Keywords without anything between them
+			"momentous",
+			"MoM",
+			"foreign manpower act, foreign worker",
+			"foreign act manpower", // Keywords out of order
+			"surrender this card this",
+			"surrender card this",
+			"visit\tpass sector",
+			"SeCtOr",
+			"\u017Fector", // Long s is folded only with UNICODE_CASE
+			"\u0130mmigration regulations", // Dotted capital I
+			"immigration regulations",
+			"\u212Aork permit", // Kelvin sign
+			"w\u00F6rk permit \u4E2D\u6587 work permit",
+			"Employment \uD83D\uDE00 Details", // Surrogate pair between keywords
+	};
+	private static final String[] FRAGMENTS = new String[]{
+			"foreign", "worker", "employment", "details", "employer", "name", "wp", "no", "mom", "work", "permit", "sector", "manpower", "act", "visit",
+			"pass", "immigration", "regulations", "surrender", "this", "card", "FOREIGN", "Work", "Permit", "Mo", "m", "er", "s", " ", "\t", "\n", "\r\n",
+			"\u2028", "\u00E9", "\u0130", ".", "*", "?"
+	};
+
+	public void testSamples() {
+
+		DocumentClassifier classifier = new DocumentClassifier(101f, DocumentType.values());
+		for (String sample : SAMPLES) assertMatch(classifier, sample);
+	}
+	public void testRandomTexts() {
+
+		DocumentClassifier classifier = new DocumentClassifier(101f, DocumentType.values());
+		Random random = new Random(1);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int j = 0; j < length; j++) text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+
+			assertMatch(classifier, text.toString());
+		}
+	}
+	public void testDecisiveMargin() {
+
+		DocumentClassifier classifier = DocumentClassifier.getInstance();
+
+		assertEquals(DocumentType.WORK_PERMIT, classifier.classify("work permit\nsector\nforeign manpower act\nvisit pass"));
+		assertEquals(DocumentType.MOM, classifier.classify("foreign worker\nemployment details\nemployer details\nname of employer\nWP No"));
+		assertNull(classifier.classify("nothing to see here"));
+	}
+
+	private static void assertMatch(DocumentClassifier classifier, String text) {
+
+		DocumentType[] types = DocumentType.values();
+		float[] expected = new float[types.length];
+		for (int type = 0; type < types.length; type++) expected[type] = regexMatch(types[type].getPatterns(), text);
+
+		float[] actual = classifier.matchText(text);
+		for (int type = 0; type < types.length; type++) assertEquals(types[type] + " of \"" + escape(text) + '"', expected[type], actual[type], 0.001f);
+
+		// Without the early exit classify() picks the first type with the highest percentage
+		DocumentType leader = null;
+		float leaderMatch = 0f;
+		for (int type = 0; type < types.length; type++) {
+			if (expected[type] > leaderMatch) {
+				leader = types[type];
+				leaderMatch = expected[type];
+			}
+		}
+		assertEquals("Type of \"" + escape(text) + '"', leader, classifier.classify(text));
+	}
+	/**
+	 * Matching as DocumentType did it before the classifier.
+	 */
+	private static float regexMatch(List<Pattern> patterns, String text) {
+
+		if (patterns.isEmpty()) return 0f;
+
+		int found = 0;
+		for (Pattern pattern : patterns) if (pattern.matcher(text).find()) found++;
+
+		return ((float) found / patterns.size()) * 100;
+	}
+	private static String escape(String text) {
+
+		StringBuilder result = new StringBuilder();
+		for (char character : text.toCharArray()) {
+			if (character < 0x20 || character > 0x7E) result.append(String.format("\\u%04X", (int) character));
+			else result.append(character);
+		}
+
+		return result.toString();
+	}
+}
@@ -0,0 +1,134 @@
+package net.nekoinemo.documentrecognition.processing;
+
+import junit.framework.TestCase;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ImagePageRasterizerTest extends TestCase {
+
+	private static final int WIDTH = 80;
+	private static final int HEIGHT = 40;
+	private static final int TOP_LEFT = 0;
+	private static final int TOP_RIGHT = 1;
+	private static final int BOTTOM_RIGHT = 2;
+	private static final int BOTTOM_LEFT = 3;
+
+	public void testWithoutOrientation() throws IOException {
+
+		ImagePageRasterizer rasterizer = new ImagePageRasterizer(ByteBuffer.wrap(encode()), "image/jpeg");
+
+		assertFalse(rasterizer.isOrientationKnown(0));
+		assertUpright(rasterizer.renderPage(0), false, TOP_LEFT);
+	}
+	public void testOrientation1() throws IOException {
+
+		assertOrientation(1, false, TOP_LEFT);
+	}
+	public void testOrientation2() throws IOException {
+
+		assertOrientation(2, false, TOP_RIGHT);
+	}
+	public void testOrientation3() throws IOException {
+
+		assertOrientation(3, false, BOTTOM_RIGHT);
+	}
+	public void testOrientation4() throws IOException {
+
+		assertOrientation(4, false, BOTTOM_LEFT);
+	}
+	public void testOrientation5() throws IOException {
+
+		assertOrientation(5, true, TOP_LEFT);
+	}
+	public void testOrientation6() throws IOException {
+
+		assertOrientation(6, true, TOP_RIGHT);
+	}
+	public void testOrientation7() throws IOException {
+
+		assertOrientation(7, true, BOTTOM_RIGHT);
+	}
+	public void testOrientation8() throws IOException {
+
+		assertOrientation(8, true, BOTTOM_LEFT);
+	}
+	public void testLittleEndianExif() throws IOException {
+
+		ImagePageRasterizer rasterizer = new ImagePageRasterizer(ByteBuffer.wrap(withExifOrientation(encode(), 6, ByteOrder.LITTLE_ENDIAN)), "image/jpeg");
+
+		assertTrue(rasterizer.isOrientationKnown(0));
+		assertUpright(rasterizer.renderPage(0), true, TOP_RIGHT);
+	}
+
+	/**
+	 * Stored image is WIDTH x HEIGHT with the dark top left quadrant, the tag tells where the quadrant is once the image is upright.
+	 */
+	private static void assertOrientation(int orientation, boolean isTransposed, int darkQuadrant) throws IOException {
+
+		ImagePageRasterizer rasterizer = new ImagePageRasterizer(ByteBuffer.wrap(withExifOrientation(encode(), orientation, ByteOrder.BIG_ENDIAN)), "image/jpeg");
+
+		assertTrue(rasterizer.isOrientationKnown(0));
+		assertUpright(rasterizer.renderPage(0), isTransposed, darkQuadrant);
+	}
+	private static void assertUpright(BufferedImage image, boolean isTransposed, int darkQuadrant) {
+
+		assertEquals(isTransposed ? HEIGHT : WIDTH, image.getWidth());
+		assertEquals(isTransposed ? WIDTH : HEIGHT, image.getHeight());
+
+		int[][] centers = new int[][]{
+				{ image.getWidth() / 4, image.getHeight() / 4 },
+				{ image.getWidth() * 3 / 4, image.getHeight() / 4 },
+				{ image.getWidth() * 3 / 4, image.getHeight() * 3 / 4 },
+				{ image.getWidth() / 4, image.getHeight() * 3 / 4 }
+		};
+		for (int quadrant = 0; quadrant < centers.length; quadrant++) {
+			int luminance = image.getRaster().getSample(centers[quadrant][0], centers[quadrant][1], 0);
+			if (quadrant == darkQuadrant) assertTrue("Quadrant " + quadrant + " should be dark: " + luminance, luminance < 64);
+			else assertTrue("Quadrant " + quadrant + " should be light: " + luminance, luminance > 192);
+		}
+	}
+	private static byte[] encode() throws IOException {
+
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D graphics2D = image.createGraphics();
+		graphics2D.setColor(Color.WHITE);
+		graphics2D.fillRect(0, 0, WIDTH, HEIGHT);
+		graphics2D.setColor(Color.BLACK);
+		graphics2D.fillRect(0, 0, WIDTH / 2, HEIGHT / 2);
+		graphics2D.dispose();
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpeg", output);
+
+		return output.toByteArray();
+	}
+	/**
+	 * Inserts the EXIF segment with the orientation tag after the JFIF segment written by ImageIO.
+	 */
+	private static byte[] withExifOrientation(byte[] jpeg, int orientation, ByteOrder byteOrder) {
+
+		ByteBuffer tiff = ByteBuffer.allocate(26).order(byteOrder);
+		tiff.put(byteOrder == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M').put(byteOrder == ByteOrder.LITTLE_ENDIAN ? (byte) 'I' : (byte) 'M');
+		tiff.putShort((short) 42).putInt(8); // Magic number, offset of the first IFD
+		tiff.putShort((short) 1); // Entry count
+		tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0); // Orientation, SHORT, 1 value
+		tiff.putInt(0); // No next IFD
+
+		ByteBuffer segment = ByteBuffer.allocate(4 + 6 + tiff.capacity()).order(ByteOrder.BIG_ENDIAN);
+		segment.putShort((short) 0xFFE1).putShort((short) (segment.capacity() - 2));
+		segment.put(new byte[]{ 'E', 'x', 'i', 'f', 0, 0 }).put(tiff.array());
+
+		int insertAt = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF)); // SOI and the APP0 segment
+		ByteBuffer result = ByteBuffer.allocate(jpeg.length + segment.capacity());
+		result.put(jpeg, 0, insertAt).put(segment.array()).put(jpeg, insertAt, jpeg.length - insertAt);
+
+		return result.array();
+	}
+}